@@ -296,6 +296,42 @@ public class CXBoard {
 		return C;
   }
 
+	/**
+	 * Checks whether a player can still win, i.e. whether a row, a column or a
+	 * diagonal of X cells holds no symbol of the other player.
+	 *
+	 * @param player 0 (first player) or 1 (second player)
+	 * @return true if the player can still align X symbols
+	 */
+	public boolean canWin(int player) {
+		CXCellState s = Player[1 - player];
+		int[][] dirs = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+		for (int[] d : dirs)
+			for (int i = 0; i < M; i++)
+				for (int j = 0; j < N; j++) {
+					int li = i + (X-1)*d[0], lj = j + (X-1)*d[1];
+					if (li >= M || lj < 0 || lj >= N) continue; // window out of the board
+					int k = 0;
+					while (k < X && B[i+k*d[0]][j+k*d[1]] != s) k++;
+					if (k == X) return true;
+				}
+		return false;
+	}
+
+	/**
+	 * Checks whether the game is open but neither player can win anymore.
+	 * <p>
+	 * The rules only declare a DRAW on a full board: this is an optional check
+	 * for players and harnesses that want to end such games early.
+	 * </p>
+	 *
+	 * @return true if the game can only end in a draw
+	 */
+	public boolean isDeadDraw() {
+		return gameState == CXGameState.OPEN && !canWin(0) && !canWin(1);
+	}
+
 
 	// Check winning state from cell i, j
 	private boolean isWinningMove(int i, int j) {
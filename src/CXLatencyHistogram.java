@@ -0,0 +1,115 @@
+package connectx;
+
+/**
+ * Histogram of durations in nanoseconds, with logarithmic buckets in the
+ * manner of HdrHistogram.
+ * <p>
+ * Durations below 64 ns have a bucket each; above, each power of two is split
+ * into 32 buckets, so a recorded duration is known within about 3% whatever its
+ * magnitude, in a fixed array of less than 2000 counters. The smallest and
+ * largest durations are kept exactly.
+ * </p>
+ */
+public class CXLatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // 64
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2; // 32
+	private static final int MAX_SHIFT = 62 - (SUB_BUCKET_BITS - 1); // Of Long.MAX_VALUE
+
+	private final long[] counts = new long[SUB_BUCKETS + MAX_SHIFT * HALF_SUB_BUCKETS];
+	private long count;
+	private long total;
+	private long min = Long.MAX_VALUE;
+	private long max;
+
+	/**
+	 * Records a duration
+	 *
+	 * @param nanos duration in nanoseconds, negative durations are recorded as 0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		counts[index(nanos)]++;
+		count++;
+		total += nanos;
+		min = Math.min(min, nanos);
+		max = Math.max(max, nanos);
+	}
+
+	/**
+	 * Adds the durations recorded by another histogram to this one
+	 *
+	 * @param other histogram to add
+	 */
+	public void add(CXLatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++)
+			counts[i] += other.counts[i];
+		count += other.count;
+		total += other.total;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * @return the smallest duration recorded, 0 if there is none
+	 */
+	public long min() {
+		return count == 0 ? 0 : min;
+	}
+
+	/**
+	 * @return the largest duration recorded, 0 if there is none
+	 */
+	public long max() {
+		return max;
+	}
+
+	/**
+	 * @return the mean of the durations recorded, 0 if there is none
+	 */
+	public double mean() {
+		return count == 0 ? 0.0 : (double) total / count;
+	}
+
+	/**
+	 * Returns the duration below or at which the given fraction of the durations
+	 * were recorded, rounded up to the end of its bucket
+	 *
+	 * @param fraction fraction between 0 and 1 (0.5 for the median, 0.99 for the 99th percentile)
+	 * @return the duration in nanoseconds, never above the largest duration recorded, 0 if there is none
+	 */
+	public long percentile(double fraction) {
+		if (count == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(highestValue(i), max);
+		}
+		return max;
+	}
+
+	// Bucket of a duration: exact below SUB_BUCKETS, the top SUB_BUCKET_BITS bits above
+	private static int index(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+		return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) ((value >>> shift) - HALF_SUB_BUCKETS);
+	}
+
+	// Largest duration falling in the bucket
+	private static long highestValue(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+		long lowest = (long) ((index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
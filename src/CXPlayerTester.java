@@ -27,6 +27,13 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
 /**
  * Runs a game against two CXPlayer classes and prints the game scores:
  * <ul>
@@ -40,13 +47,19 @@ import java.util.concurrent.TimeoutException;
  * OPTIONS:<br>
  * -t timeout&gt; Timeout in seconds</br>
  * -r rounds; Number of rounds</br>
- * -g graphic; Graphic terminal board -v Verbose
+ * -g graphic; Graphic terminal board -v Verbose, with the statistics of the
+ * players implementing CXStatsReporter</br>
+ * -d dead draw; End a game as a draw as soon as no player can win</br>
+ * -l latency; Print the distribution of the time taken by selectColumn, per
+ * player and per phase of the game
  * </p>
  */
 public class CXPlayerTester {
 	private static int TIMEOUT = 10;
 	private static int ROUNDS = 1;
 	private static boolean VERBOSE = false;
+	private static boolean DEADDRAW = false;
+	private static boolean LATENCY = false;
 
 	private static int M;
 	private static int N;
@@ -56,6 +69,10 @@ public class CXPlayerTester {
 
 	private static CXPlayer[] Player = new CXPlayer[2];
 
+	/** Time taken by selectColumn, for each player over all its moves and by phase (N moves of the game each) */
+	private static CXLatencyHistogram[] MoveLatency;
+	private static CXLatencyHistogram[][] PhaseLatency;
+
 	/** Scoring system */
 	private static int WINSCORE  = 3;
 	private static int DRAWSCORE = 1;
@@ -65,6 +82,50 @@ public class CXPlayerTester {
 		WINP1, WINP2, DRAW, ERRP1, ERRP2, EP1EX, EP2EX;
 	}
 
+	/** Flight Recorder event of a game, lasting from the initialization of the players to the end */
+	@Name("connectx.GameFinished")
+	@Label("Game Finished")
+	@Category({ "Connect X", "Tester" })
+	@StackTrace(false)
+	static class GameFinishedEvent extends Event {
+		@Label("Round")
+		int round;
+		@Label("Rows")
+		int rows;
+		@Label("Columns")
+		int columns;
+		@Label("To Connect")
+		int toConnect;
+		@Label("Player 1")
+		String player1;
+		@Label("Player 2")
+		String player2;
+		@Label("Result")
+		@Description("WINP1, WINP2, DRAW, or an error of a player (ERRP1, ERRP2, EP1EX, EP2EX)")
+		String result;
+		@Label("Moves")
+		int moves;
+	}
+
+	/** Flight Recorder event of a player interrupted by the timeout, lasting as long as its move */
+	@Name("connectx.PlayerTimeout")
+	@Label("Player Timeout")
+	@Category({ "Connect X", "Tester" })
+	@StackTrace(false)
+	static class PlayerTimeoutEvent extends Event {
+		@Label("Player")
+		String player;
+		@Label("Player Index")
+		@Description("1 for the first player, 2 for the second one")
+		int index;
+		@Label("Move")
+		@Description("Number of the move in the game, from 1")
+		int move;
+		@Label("Timeout")
+		@Description("Time limit of a move, in seconds")
+		int timeout;
+	}
+
 	private CXPlayerTester() {
 	}
 
@@ -108,6 +169,7 @@ public class CXPlayerTester {
 	private static class StoppablePlayer implements Callable<Integer> {
 		private final CXPlayer P;
 		private final CXBoard B;
+		private long nanos; // Time taken by selectColumn, read once the Future has returned
 
 		public StoppablePlayer(CXPlayer P, CXBoard B) {
 			this.P = P;
@@ -115,22 +177,42 @@ public class CXPlayerTester {
 		}
 
 		public Integer call() throws InterruptedException {
-			return P.selectColumn(B);
+			long start = System.nanoTime();
+			int c = P.selectColumn(B);
+			nanos = System.nanoTime() - start;
+			return c;
 		}
 	}
 
 	private static GameState runGame() {
 		while (B.gameState() == CXGameState.OPEN) {
+			if (DEADDRAW && B.isDeadDraw()) {
+				if (VERBOSE)
+					System.out.println("No player can win anymore: game ended as a draw");
+				return GameState.DRAW;
+			}
 			int curr = B.currentPlayer();
+			PlayerTimeoutEvent timeoutEvent = new PlayerTimeoutEvent();
+			timeoutEvent.begin();
+			final StoppablePlayer player   = new StoppablePlayer(Player[curr], B.copy());
 			final ExecutorService executor = Executors.newSingleThreadExecutor();
-			final Future<Integer> task     = executor.submit(new StoppablePlayer(Player[curr], B.copy()));
+			final Future<Integer> task     = executor.submit(player);
 			executor.shutdown(); // Makes the ExecutorService stop accepting new tasks
 
 			Integer c = null;
 
 			try {
 				c = task.get(TIMEOUT, TimeUnit.SECONDS);
+				MoveLatency[curr].record(player.nanos);
+				PhaseLatency[curr][B.numOfMarkedCells() / B.N].record(player.nanos);
 			} catch (TimeoutException ex) {
+				if (timeoutEvent.shouldCommit()) {
+					timeoutEvent.player = Player[curr].playerName();
+					timeoutEvent.index = curr + 1;
+					timeoutEvent.move = B.numOfMarkedCells() + 1;
+					timeoutEvent.timeout = TIMEOUT;
+					timeoutEvent.commit();
+				}
 				int n = 3; // Wait some more time to see if it stops
 				System.err.println(
 						"Player " + (curr + 1) + " (" + Player[curr].playerName() + ") interrupted due to timeout");
@@ -191,6 +273,11 @@ public class CXPlayerTester {
 					}
 					System.out.println(
 							"Player " + (curr + 1) + " (" + Player[curr].playerName() + ") -> [" + r + "," + c + "]");
+					if (Player[curr] instanceof CXStatsReporter) {
+						String stats = ((CXStatsReporter) Player[curr]).lastMoveStats();
+						if (stats != null)
+							System.out.println(stats);
+					}
 				}
 			} catch (Exception ex) {
 				System.err.println("Player " + (curr + 1) + " (" + Player[curr].playerName()
@@ -235,6 +322,12 @@ public class CXPlayerTester {
 				case 'v':
 					VERBOSE = true;
 					break;
+				case 'd':
+					DEADDRAW = true;
+					break;
+				case 'l':
+					LATENCY = true;
+					break;
 				default:
 					throw new IllegalArgumentException("Illegal argument:  " + args[i]);
 				}
@@ -293,7 +386,33 @@ public class CXPlayerTester {
 		System.err.println("OPTIONS:");
 		System.err.println("  -t <timeout>  Timeout in seconds. Default: " + TIMEOUT);
 		System.err.println("  -r <rounds>   Number of rounds. Default: " + ROUNDS);
-		System.err.println("  -v            Verbose. Default: " + VERBOSE);
+		System.err.println("  -v            Verbose, with the players' search statistics. Default: " + VERBOSE);
+		System.err.println("  -d            End a game as a draw when no player can win. Default: " + DEADDRAW);
+		System.err.println("  -l            Print the latency of the players' moves. Default: " + LATENCY);
+	}
+
+	private static void printLatency() {
+		System.out.println("\n**** MOVE LATENCY (ms) ****");
+		for (int k = 0; k < 2; k++) {
+			System.out.println("Player " + (k + 1) + " (" + Player[k].playerName() + ")");
+			printLatency("all moves", MoveLatency[k]);
+			for (int p = 0; p < PhaseLatency[k].length; p++)
+				if (PhaseLatency[k][p].count() > 0)
+					printLatency("moves " + (p * N + 1) + "-" + (p + 1) * N, PhaseLatency[k][p]);
+		}
+	}
+
+	// Percentiles of the time taken by the moves, and the smallest margin left before the timeout
+	private static void printLatency(String moves, CXLatencyHistogram H) {
+		if (H.count() == 0) {
+			System.out.println(String.format("  %-13s:     0 moves", moves));
+			return;
+		}
+		long margin = TimeUnit.SECONDS.toNanos(TIMEOUT) - H.max();
+		System.out.println(String.format(
+				"  %-13s: %5d moves, p50 %9.3f, p99 %9.3f, max %9.3f, min margin %9.3f (%.1f%% of the timeout)",
+				moves, H.count(), H.percentile(0.5) / 1e6, H.percentile(0.99) / 1e6, H.max() / 1e6, margin / 1e6,
+				100.0 * margin / TimeUnit.SECONDS.toNanos(TIMEOUT)));
 	}
 
 	public static void main(String[] args) {
@@ -314,6 +433,14 @@ public class CXPlayerTester {
 			System.exit(1);
 		}
 
+		MoveLatency = new CXLatencyHistogram[2];
+		PhaseLatency = new CXLatencyHistogram[2][M];
+		for (int k = 0; k < 2; k++) {
+			MoveLatency[k] = new CXLatencyHistogram();
+			for (int p = 0; p < M; p++)
+				PhaseLatency[k][p] = new CXLatencyHistogram();
+		}
+
 		if (VERBOSE) {
 			System.out.println("Game type : " + M + "," + N + "," + X);
 			System.out.println("Player1   : " + Player[0].playerName());
@@ -326,8 +453,21 @@ public class CXPlayerTester {
 		for (int i = 1; i <= ROUNDS && !stop; i++) {
 			if (VERBOSE)
 				System.out.println("\n**** ROUND " + i + " ****");
+			GameFinishedEvent gameEvent = new GameFinishedEvent();
+			gameEvent.begin();
 			initGame();
 			GameState state = runGame();
+			if (gameEvent.shouldCommit()) {
+				gameEvent.round = i;
+				gameEvent.rows = M;
+				gameEvent.columns = N;
+				gameEvent.toConnect = X;
+				gameEvent.player1 = Player[0].playerName();
+				gameEvent.player2 = Player[1].playerName();
+				gameEvent.result = state.name();
+				gameEvent.moves = B.numOfMarkedCells();
+				gameEvent.commit();
+			}
 
 			switch (state) {
 			case WINP1:
@@ -363,6 +503,8 @@ public class CXPlayerTester {
 			System.out.println("\n**** FINAL SCORE ****");
 		System.out.println(Player[0].playerName() + " Score: " + P1SCORE + " Won: " + STATP1[0] + " Lost: " + STATP2[0] + " Draw: " + STATP1[1] + " Error: " + STATP1[2]);
 		System.out.println(Player[1].playerName() + " Score: " + P2SCORE + " Won: " + STATP2[0] + " Lost: " + STATP1[0] + " Draw: " + STATP2[1] + " Error: " + STATP2[2]); 
+		if (LATENCY)
+			printLatency();
 		
 		System.exit(0);
 	}
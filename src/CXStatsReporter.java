@@ -0,0 +1,18 @@
+package connectx;
+
+/**
+ * Optional interface of a CXPlayer reporting what it did to select its moves.
+ * <p>
+ * CXPlayerTester prints the report after each move in verbose mode.
+ * </p>
+ */
+public interface CXStatsReporter {
+
+	/**
+	 * Returns the statistics of the last call to <code>selectColumn</code>
+	 *
+	 * @return a report, possibly on several lines, or null if there is nothing to report
+	 */
+	public String lastMoveStats();
+
+}
@@ -0,0 +1,476 @@
+package connectx.MCTS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import connectx.CXBoard;
+import connectx.CXPlayer;
+import connectx.SouthPasadena.FastBoard;
+
+/**
+ * Monte Carlo Tree Search software player, meant for very large boards.
+ * <p>
+ * The tree is searched with UCT combined with RAVE (all-moves-as-first
+ * statistics, blended in while a node has few visits). Random playouts are
+ * run on a per-thread FastBoard copy without allocating. All the cores search
+ * the same tree: selection, expansion and backup are done under the tree lock,
+ * playouts in parallel, and a virtual loss on the nodes being explored spreads
+ * the threads over different lines.
+ * </p>
+ * <p>
+ * The tree is also an MCTS-Solver: every expansion runs a two-ply threat
+ * check on FastBoard's winning column queries, those of SouthPasadena's threat
+ * cutoffs (immediate wins, double threats, forced blocks), plus the moves that
+ * let the opponent win on top of them, and marks the children it decides as
+ * proven wins or losses. Proofs are backed up the
+ * tree, proven nodes are never simulated again and the search stops as soon
+ * as the root is decided.
+ * </p>
+ */
+public class MCTS implements CXPlayer {
+
+    // CONSTANTS
+
+    // UCT exploration constant
+    public static final double EXPLORATION = 0.7;
+
+    // Number of visits at which RAVE and UCT statistics weigh the same
+    public static final double RAVE_EQUIVALENCE = 500;
+
+    // Visits a leaf needs before being expanded
+    public static final int EXPANSION_VISITS = 2;
+
+    // Maximum number of nodes of the tree
+    public static final int POOL_CAPACITY = 1 << 20;
+
+    private int rowsNumber;
+    private int columnsNumber;
+    private int tokensToConnect;
+
+    // Dealing with time
+    private long timeConstraintMillis;
+
+    private int threads;
+    private ExecutorService executor;
+
+    private NodePool pool;
+    private FastBoard rootBoard;
+    private int root;
+    private int rootPlayer;
+
+    /* Default empty constructor */
+    public MCTS() {
+    }
+
+    /*
+     * Initialize the Player
+     */
+    public void initPlayer(int M, int N, int X, boolean first, int timeout_in_secs){
+
+        rowsNumber = M;
+        columnsNumber = N;
+        tokensToConnect = X;
+
+        timeConstraintMillis = timeout_in_secs * 1000L;
+
+        if (executor != null){
+            executor.shutdownNow();
+        }
+        threads = Runtime.getRuntime().availableProcessors();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "MCTS worker");
+            t.setDaemon(true);
+            return t;
+        });
+
+        if (pool == null){
+            pool = new NodePool(POOL_CAPACITY);
+        }
+        rootBoard = new FastBoard(M, N, X, null);
+    }
+
+    /*
+     * Select the best column
+     */
+    public int selectColumn(CXBoard B){
+
+        long startingTime = System.currentTimeMillis();
+        // Leaving a margin for joining the workers
+        long deadline = startingTime + (long) (0.95 * timeConstraintMillis);
+
+        rootBoard.load(B);
+        rootPlayer = rootBoard.currentPlayer();
+
+        // An immediate win needs no search
+        for (int j=0; j<columnsNumber; j++){
+            if (rootBoard.isWinningColumn(j, rootPlayer)){
+                return j;
+            }
+        }
+
+        pool.reset();
+        root = pool.allocate(1);
+        expand(root, rootBoard);
+
+        // If all the columns but one are proven losses there is nothing to search
+        if (pool.proof[root] != NodePool.UNKNOWN || countUnprovenChildren(root) == 1){
+            return bestColumn();
+        }
+
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t=0; t<threads; t++){
+            Worker worker = new Worker(t);
+            workers.add(executor.submit(() -> worker.run(deadline)));
+        }
+        for (Future<?> worker : workers){
+            try {
+                worker.get();
+            } catch (Exception e) {
+                System.err.println("MCTS: worker failed (" + e + ")");
+            }
+        }
+
+        return bestColumn();
+    }
+
+    /**
+     * @return A proven winning column of the root if there is one, otherwise the most
+     * visited column among those not proven to lose
+     */
+    private int bestColumn(){
+
+        NodePool p = pool;
+        int best = -1;
+        for (int k = p.firstChild[root]; k < p.firstChild[root] + p.childCount[root]; k++){
+            if (p.proof[k] == NodePool.PROVEN_WIN){
+                return p.move[k];
+            }
+            if (best < 0 || isBetterChoice(k, best)){
+                best = k;
+            }
+        }
+        return p.move[best];
+    }
+
+    private boolean isBetterChoice(int k, int best){
+        boolean kLoses = pool.proof[k] == NodePool.PROVEN_LOSS;
+        boolean bestLoses = pool.proof[best] == NodePool.PROVEN_LOSS;
+        if (kLoses != bestLoses){
+            return bestLoses;
+        }
+        return pool.visits[k] > pool.visits[best];
+    }
+
+    private int countUnprovenChildren(int node){
+        int count = 0;
+        for (int k = pool.firstChild[node]; k < pool.firstChild[node] + pool.childCount[node]; k++){
+            if (pool.proof[k] == NodePool.UNKNOWN){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Allocates the children of a node, one for each non-full column.
+     * Must be called holding the pool lock.
+     *
+     * @param node
+     * @param board - The position of the node
+     * @return False if the pool is full
+     */
+    private boolean expand(int node, FastBoard board){
+
+        int count = 0;
+        for (int j=0; j<columnsNumber; j++){
+            if (board.canPlay(j)){
+                count++;
+            }
+        }
+
+        int first = pool.allocate(count);
+        if (first < 0){
+            return false;
+        }
+
+        int k = first;
+        for (int j=0; j<columnsNumber; j++){
+            if (board.canPlay(j)){
+                pool.move[k++] = j;
+            }
+        }
+        pool.firstChild[node] = first;
+        pool.childCount[node] = count;
+
+        proveChildren(node, board);
+        return true;
+    }
+
+    /**
+     * Two-ply threat check of the children of a node which has just been expanded.
+     * Must be called holding the pool lock.
+     *
+     * @param node
+     * @param board - The position of the node
+     */
+    private void proveChildren(int node, FastBoard board){
+
+        NodePool p = pool;
+        int me = board.currentPlayer();
+        int you = 1 - me;
+        int first = p.firstChild[node];
+        int last = first + p.childCount[node];
+
+        // Immediate win
+        int win = board.winningColumn(me);
+        if (win >= 0){
+            for (int k = first; k < last; k++){
+                if (p.move[k] == win){
+                    p.terminal[k] = NodePool.WIN;
+                    p.proof[k] = NodePool.PROVEN_WIN;
+                }
+            }
+            p.proof[node] = NodePool.PROVEN_LOSS;
+            return;
+        }
+
+        // Threats of the opponent: with two of them every move loses, with one every move but the block loses
+        int threats = board.winningColumns(you);
+        int threatColumn = threats == 1 ? board.winningColumn(you) : -1;
+
+        for (int k = first; k < last; k++){
+            int column = p.move[k];
+            int above = board.freeRow(column) - 1;
+            if (threats > 1 || (threats == 1 && column != threatColumn)
+                || (above >= 0 && board.isWinningCell(above, column, you))){
+                // The opponent wins with the next move
+                p.proof[k] = NodePool.PROVEN_LOSS;
+            }
+        }
+
+        updateProof(node);
+    }
+
+    /**
+     * Derives the proven value of an expanded node from its children.
+     * Must be called holding the pool lock.
+     *
+     * @param node
+     */
+    private void updateProof(int node){
+
+        NodePool p = pool;
+        if (p.firstChild[node] < 0 || p.proof[node] != NodePool.UNKNOWN){
+            return;
+        }
+
+        boolean allLose = true;
+        for (int k = p.firstChild[node]; k < p.firstChild[node] + p.childCount[node]; k++){
+            if (p.proof[k] == NodePool.PROVEN_WIN){
+                // The player to move has a winning move
+                p.proof[node] = NodePool.PROVEN_LOSS;
+                return;
+            }
+            allLose &= p.proof[k] == NodePool.PROVEN_LOSS;
+        }
+        if (allLose){
+            p.proof[node] = NodePool.PROVEN_WIN;
+        }
+    }
+
+    /**
+     * Selects the child with the highest UCT-RAVE value.
+     * Must be called holding the pool lock.
+     *
+     * @param node
+     * @return The selected child
+     */
+    private int selectChild(int node){
+
+        NodePool p = pool;
+        double logParent = Math.log(p.visits[node] + 1);
+        int best = -1;
+        double bestValue = Double.NEGATIVE_INFINITY;
+
+        for (int k = p.firstChild[node]; k < p.firstChild[node] + p.childCount[node]; k++){
+
+            if (p.proof[k] == NodePool.PROVEN_LOSS){
+                // Never worth exploring while the node itself is not decided
+                continue;
+            }
+
+            int n = p.visits[k] + p.virtualLoss[k];
+            double amaf = p.amafVisits[k] > 0 ? p.amafWins[k] / p.amafVisits[k] : 0.5;
+            double value;
+
+            if (n == 0){
+                // Unvisited children come first, ordered by their RAVE value
+                value = 10 + amaf;
+            }
+            else{
+                double beta = Math.sqrt(RAVE_EQUIVALENCE / (3 * n + RAVE_EQUIVALENCE));
+                double mean = p.wins[k] / n;
+                value = (1 - beta) * mean + beta * amaf + EXPLORATION * Math.sqrt(logParent / n);
+            }
+
+            if (value > bestValue){
+                bestValue = value;
+                best = k;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Search thread. All its buffers are allocated once, so iterations do not allocate.
+     */
+    private class Worker {
+
+        private final FastBoard board = new FastBoard(rowsNumber, columnsNumber, tokensToConnect, null);
+        private final int[] path = new int[rowsNumber * columnsNumber + 1];
+        private final int[] moves = new int[rowsNumber * columnsNumber];
+        private final int[][] seen = new int[2][columnsNumber];
+        private int stamp = 0;
+        private long randomState;
+
+        Worker(int id) {
+            randomState = System.nanoTime() ^ (0x9E3779B97F4A7C15L * (id + 1));
+        }
+
+        void run(long deadline) {
+            while (System.currentTimeMillis() < deadline && pool.proof[root] == NodePool.UNKNOWN){
+                iterate();
+            }
+        }
+
+        private void iterate() {
+
+            NodePool p = pool;
+            int depth = 0;
+            int node = root;
+
+            // SELECTION AND EXPANSION
+            synchronized (p) {
+                board.copyFrom(rootBoard);
+                path[0] = root;
+
+                while (p.terminal[node] == NodePool.OPEN && p.proof[node] == NodePool.UNKNOWN){
+                    if (p.firstChild[node] < 0){
+                        if (p.visits[node] < EXPANSION_VISITS || !expand(node, board)){
+                            break;
+                        }
+                        if (p.proof[node] != NodePool.UNKNOWN){
+                            // Decided by the threat check of its children
+                            break;
+                        }
+                    }
+
+                    int child = selectChild(node);
+                    p.virtualLoss[child]++;
+
+                    int column = p.move[child];
+                    moves[depth] = column;
+                    if (board.play(column)){
+                        p.terminal[child] = NodePool.WIN;
+                        p.proof[child] = NodePool.PROVEN_WIN;
+                    }
+                    else if (board.isFull()){
+                        p.terminal[child] = NodePool.DRAW;
+                    }
+
+                    path[++depth] = child;
+                    node = child;
+                }
+            }
+
+            // SIMULATION (skipped for proven nodes)
+            int length = depth;
+            int winner;
+            if (p.proof[node] == NodePool.PROVEN_WIN){
+                winner = 1 - board.currentPlayer();
+            }
+            else if (p.proof[node] == NodePool.PROVEN_LOSS){
+                winner = board.currentPlayer();
+            }
+            else if (p.terminal[node] == NodePool.DRAW){
+                winner = -1;
+            }
+            else{
+                winner = -1;
+                while (!board.isFull()){
+                    int column = randomColumn();
+                    moves[length++] = column;
+                    if (board.play(column)){
+                        winner = 1 - board.currentPlayer();
+                        break;
+                    }
+                }
+            }
+
+            // BACKPROPAGATION
+            synchronized (p) {
+                stamp++;
+                for (int k = length - 1; k >= 0; k--){
+
+                    int player = (k % 2 == 0) ? rootPlayer : 1 - rootPlayer;
+                    seen[player][moves[k]] = stamp;
+
+                    // RAVE update of the children of the k-th node of the path
+                    if (k <= depth && p.firstChild[path[k]] >= 0){
+                        float reward = reward(winner, player);
+                        for (int c = p.firstChild[path[k]]; c < p.firstChild[path[k]] + p.childCount[path[k]]; c++){
+                            if (seen[player][p.move[c]] == stamp){
+                                p.amafVisits[c]++;
+                                p.amafWins[c] += reward;
+                            }
+                        }
+                    }
+                }
+
+                for (int i = depth; i >= 0; i--){
+                    int n = path[i];
+                    // The player who moved into the i-th node of the path
+                    int mover = (i % 2 == 1) ? rootPlayer : 1 - rootPlayer;
+                    p.visits[n]++;
+                    p.wins[n] += reward(winner, mover);
+                    if (i > 0){
+                        p.virtualLoss[n]--;
+                    }
+                }
+
+                // Backing up the proofs
+                for (int i = depth - 1; i >= 0; i--){
+                    updateProof(path[i]);
+                }
+            }
+        }
+
+        private float reward(int winner, int player) {
+            return winner == -1 ? 0.5f : (winner == player ? 1f : 0f);
+        }
+
+        // Uniformly random non-full column (xorshift generator)
+        private int randomColumn() {
+            while (true){
+                randomState ^= randomState << 13;
+                randomState ^= randomState >>> 7;
+                randomState ^= randomState << 17;
+                int column = (int) ((randomState >>> 33) % columnsNumber);
+                if (board.canPlay(column)){
+                    return column;
+                }
+            }
+        }
+    }
+
+    /*
+     * My software player's name
+     */
+    public String playerName() {
+        return "MCTS";
+    }
+}
@@ -0,0 +1,98 @@
+package connectx.MCTS;
+
+/**
+ * Preallocated storage for the nodes of the MCTS tree.
+ * <p>
+ * Nodes are indexes into parallel primitive arrays, and the children of a node
+ * are allocated as a contiguous block, so growing the tree never allocates
+ * objects. The pool is emptied at every move. Statistics of a node are from
+ * the point of view of the player who made the move leading to it.
+ * </p>
+ */
+public class NodePool {
+
+    // Terminal states of a node
+    public static final byte OPEN = 0;
+    public static final byte WIN = 1;   // The move leading to the node won the game
+    public static final byte DRAW = 2;  // The move leading to the node filled the board
+
+    // Proven values of a node, from the point of view of the player who moved into it
+    public static final byte UNKNOWN = 0;
+    public static final byte PROVEN_WIN = 1;
+    public static final byte PROVEN_LOSS = 2;
+
+    public final int capacity;
+    private int size;
+
+    final int[] move;
+    final int[] firstChild;   // -1 if the node has not been expanded
+    final int[] childCount;
+    final int[] visits;
+    final int[] virtualLoss;
+    final float[] wins;
+    final int[] amafVisits;
+    final float[] amafWins;
+    final byte[] terminal;
+    final byte[] proof;
+
+    /**
+     * @param capacity - Maximum number of nodes
+     */
+    public NodePool(int capacity) {
+        this.capacity = capacity;
+        move = new int[capacity];
+        firstChild = new int[capacity];
+        childCount = new int[capacity];
+        visits = new int[capacity];
+        virtualLoss = new int[capacity];
+        wins = new float[capacity];
+        amafVisits = new int[capacity];
+        amafWins = new float[capacity];
+        terminal = new byte[capacity];
+        proof = new byte[capacity];
+    }
+
+    /**
+     * Empties the pool
+     */
+    public void reset() {
+        size = 0;
+    }
+
+    /**
+     * @return The number of allocated nodes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Allocates a block of consecutive nodes.
+     *
+     * @param count
+     * @return The index of the first node, or -1 if the pool is full
+     */
+    public int allocate(int count) {
+
+        if (size + count > capacity){
+            return -1;
+        }
+
+        int first = size;
+        for (int k = first; k < first + count; k++){
+            move[k] = -1;
+            firstChild[k] = -1;
+            childCount[k] = 0;
+            visits[k] = 0;
+            virtualLoss[k] = 0;
+            wins[k] = 0;
+            amafVisits[k] = 0;
+            amafWins[k] = 0;
+            terminal[k] = OPEN;
+            proof[k] = UNKNOWN;
+        }
+        size += count;
+
+        return first;
+    }
+}
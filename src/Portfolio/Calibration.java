@@ -0,0 +1,94 @@
+package connectx.Portfolio;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import connectx.CXBoard;
+import connectx.CXGameState;
+import connectx.CXPlayer;
+import connectx.SouthPasadena.SouthPasadena;
+
+/**
+ * Offline benchmark writing the calibration table of the portfolio player.
+ * <p>
+ * For each geometry, the engines play each other with the given time limit,
+ * each game from a few random moves and each engine playing first in half of
+ * them, and the one with the best score (a win is worth 2, a draw 1) is
+ * written to the table, replacing the previous entry of the geometry and time
+ * limit. SouthPasadena wins ties. The other engines hand the game over to
+ * SouthPasadena at the same number of free cells as in a real game.
+ * </p>
+ * <p>
+ * Usage: Calibration games timeout M N X [M N X]... (e.g. 8 1 20 20 5), writing
+ * the table given by -Dportfolio.table=... (default: portfolio.table)
+ * </p>
+ */
+public class Calibration {
+
+    private static final int OPENING_MOVES = 2;
+
+    private Calibration() {
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 5 || (args.length - 2) % 3 != 0){
+            System.err.println("Usage: Calibration games timeout M N X [M N X]...");
+            System.exit(1);
+        }
+        int games = Integer.parseInt(args[0]);
+        int timeout = Integer.parseInt(args[1]);
+
+        Path file = Paths.get(System.getProperty(CalibrationTable.FILE_PROPERTY, CalibrationTable.DEFAULT_FILE));
+        CalibrationTable table = CalibrationTable.load(file);
+
+        for (int g = 2; g + 2 < args.length; g += 3){
+            int M = Integer.parseInt(args[g]);
+            int N = Integer.parseInt(args[g + 1]);
+            int X = Integer.parseInt(args[g + 2]);
+
+            // Points of the challenger against SouthPasadena
+            int points = 0;
+            for (int game = 0; game < games; game++){
+                boolean challengerFirst = game % 2 == 0;
+                CXGameState result = play(M, N, X, timeout, challengerFirst, new Random(game / 2));
+                if (result == CXGameState.DRAW){
+                    points += 1;
+                }
+                else if ((result == CXGameState.WINP1) == challengerFirst){
+                    points += 2;
+                }
+            }
+
+            Engine engine = points > games ? Engine.MCTS : Engine.SOUTHPASADENA;
+            table.put(new CalibrationTable.Entry(M, N, X, timeout, engine, SouthPasadena.ENDGAME_CELLS));
+            System.out.println(String.format("%dx%dx%d, %d s: MCTS scored %d of %d points against SouthPasadena, %s chosen",
+                                             M, N, X, timeout, points, 2 * games, engine));
+            // Saved after every geometry, so that a long run can be stopped
+            table.save(file);
+        }
+    }
+
+    // Plays a game of MCTS against SouthPasadena, both through the portfolio player
+    private static CXGameState play(int M, int N, int X, int timeout, boolean challengerFirst, Random random) {
+
+        CXBoard B = new CXBoard(M, N, X);
+        for (int i = 0; i < OPENING_MOVES; i++){
+            Integer[] columns = B.getAvailableColumns();
+            B.markColumn(columns[random.nextInt(columns.length)]);
+        }
+
+        CXPlayer challenger = new Portfolio(Engine.MCTS);
+        CXPlayer southPasadena = new Portfolio(Engine.SOUTHPASADENA);
+        CXPlayer[] players = challengerFirst ? new CXPlayer[] {challenger, southPasadena} : new CXPlayer[] {southPasadena, challenger};
+        players[0].initPlayer(M, N, X, true, timeout);
+        players[1].initPlayer(M, N, X, false, timeout);
+
+        while (B.gameState() == CXGameState.OPEN){
+            B.markColumn(players[B.currentPlayer()].selectColumn(B.copy()));
+        }
+        return B.gameState();
+    }
+}
@@ -0,0 +1,147 @@
+package connectx.Portfolio;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Table of the engine to play each geometry and time limit with.
+ * <p>
+ * The table is a text file written by Calibration, with one line per geometry
+ * and time limit, and comments starting with '#':
+ * <pre>
+ *  M N X timeout engine switchCells
+ *  30 30 5 1 MCTS 18
+ * </pre>
+ * switchCells is the number of free cells from which the game is handed over to
+ * SouthPasadena and its exact endgame solver, when the engine is another one.
+ * </p>
+ */
+public class CalibrationTable {
+
+    // System property with the path of the table (default: portfolio.table in the working directory)
+    public static final String FILE_PROPERTY = "portfolio.table";
+    public static final String DEFAULT_FILE = "portfolio.table";
+
+    /**
+     * Calibrated engine for a geometry and a time limit.
+     */
+    public static class Entry {
+
+        public final int M;
+        public final int N;
+        public final int X;
+        public final int timeout;
+        public final Engine engine;
+        public final int switchCells;
+
+        public Entry(int M, int N, int X, int timeout, Engine engine, int switchCells) {
+            this.M = M;
+            this.N = N;
+            this.X = X;
+            this.timeout = timeout;
+            this.engine = engine;
+            this.switchCells = switchCells;
+        }
+
+        /**
+         * @return The line of the entry in the table file
+         */
+        @Override
+        public String toString() {
+            return M + " " + N + " " + X + " " + timeout + " " + engine + " " + switchCells;
+        }
+    }
+
+    private final List<Entry> entries;
+
+    private CalibrationTable(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Reads a table.
+     *
+     * @param file
+     * @return The table, empty if the file does not exist
+     * @throws IOException If the file cannot be read or is malformed
+     */
+    public static CalibrationTable load(Path file) throws IOException {
+
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.isRegularFile(file)){
+            return new CalibrationTable(entries);
+        }
+
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)){
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")){
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            try {
+                if (fields.length != 6){
+                    throw new IllegalArgumentException("6 fields expected");
+                }
+                entries.add(new Entry(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                                      Integer.parseInt(fields[3]), Engine.valueOf(fields[4]), Integer.parseInt(fields[5])));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Malformed line " + lineNumber + " of " + file + ": " + e.getMessage());
+            }
+        }
+        return new CalibrationTable(entries);
+    }
+
+    /**
+     * Writes the table, sorted by geometry and time limit.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void save(Path file) throws IOException {
+
+        entries.sort((a, b) -> a.M != b.M ? a.M - b.M : a.N != b.N ? a.N - b.N : a.X != b.X ? a.X - b.X : a.timeout - b.timeout);
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("# M N X timeout engine switchCells");
+            out.newLine();
+            for (Entry entry : entries){
+                out.write(entry.toString());
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * @param M
+     * @param N
+     * @param X
+     * @param timeout
+     * @return The entry of the geometry with the time limit closest to the given one, or null
+     */
+    public Entry find(int M, int N, int X, int timeout) {
+        Entry best = null;
+        for (Entry entry : entries){
+            if (entry.M == M && entry.N == N && entry.X == X
+                    && (best == null || Math.abs(entry.timeout - timeout) < Math.abs(best.timeout - timeout))){
+                best = entry;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Adds an entry, replacing the one of the same geometry and time limit if there is one.
+     *
+     * @param entry
+     */
+    public void put(Entry entry) {
+        entries.removeIf(e -> e.M == entry.M && e.N == entry.N && e.X == entry.X && e.timeout == entry.timeout);
+        entries.add(entry);
+    }
+}
@@ -0,0 +1,31 @@
+package connectx.Portfolio;
+
+import connectx.CXPlayer;
+import connectx.SouthPasadena.SouthPasadena;
+
+/**
+ * Engines the portfolio player can play with.
+ */
+public enum Engine {
+
+    // Alpha-beta search, with the opening book, the tablebase and the exact endgame solver
+    SOUTHPASADENA {
+        @Override
+        public CXPlayer create() {
+            return new SouthPasadena();
+        }
+    },
+
+    // Monte Carlo Tree Search, for very large boards
+    MCTS {
+        @Override
+        public CXPlayer create() {
+            return new connectx.MCTS.MCTS();
+        }
+    };
+
+    /**
+     * @return A new player of this engine, to be initialized
+     */
+    public abstract CXPlayer create();
+}
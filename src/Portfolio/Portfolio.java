@@ -0,0 +1,150 @@
+package connectx.Portfolio;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import connectx.CXBoard;
+import connectx.CXPlayer;
+import connectx.CXStatsReporter;
+import connectx.SouthPasadena.SouthPasadena;
+
+/**
+ * Software player choosing the engine to play with from the board and the time limit.
+ * <p>
+ * At initialization the engine is looked up in the calibration table (see
+ * CalibrationTable and Calibration) by geometry and time limit. Without an
+ * entry for the geometry, MCTS plays on boards of at least MCTS_CELLS cells
+ * where at most MCTS_MAX_X tokens have to be connected, and SouthPasadena
+ * everywhere else. An engine other than SouthPasadena hands the game over to
+ * SouthPasadena when few cells are left, so that the end of the game is played
+ * by its exact solver.
+ * </p>
+ */
+public class Portfolio implements CXPlayer, CXStatsReporter {
+
+    // CONSTANTS
+
+    /*
+     * Default rule, for geometries which are not in the calibration table: with 1 second per move,
+     * MCTS beat SouthPasadena on every board of at least 10x10 cells it was tried on (X from 5 to 7),
+     * and was not clearly stronger on the smaller ones
+     */
+    // Smallest board played with MCTS
+    public static final int MCTS_CELLS = 100;
+
+    // Largest number of tokens to connect played with MCTS
+    public static final int MCTS_MAX_X = 7;
+
+    // Engine to play with whatever the table says, or null to look it up
+    private final Engine forcedEngine;
+
+    private Engine engineType;
+    private CXPlayer engine;
+
+    // SouthPasadena, playing the end of the game when the engine is another one (null otherwise)
+    private CXPlayer endgame;
+    private int switchCells;
+
+    // Engine which selected the last move
+    private CXPlayer lastPlayer;
+
+    /* Default empty constructor */
+    public Portfolio() {
+        this(null);
+    }
+
+    /**
+     * A player always using the given engine, as when calibrating.
+     *
+     * @param engine - The engine, or null to look it up in the calibration table
+     */
+    Portfolio(Engine engine) {
+        this.forcedEngine = engine;
+    }
+
+    /*
+     * Initialize the Player
+     */
+    public void initPlayer(int M, int N, int X, boolean first, int timeout_in_secs){
+
+        CalibrationTable.Entry entry = forcedEngine == null ? lookUp(M, N, X, timeout_in_secs) : null;
+        if (entry != null){
+            engineType = entry.engine;
+            switchCells = entry.switchCells;
+        }
+        else{
+            engineType = forcedEngine != null ? forcedEngine : defaultEngine(M, N, X);
+            switchCells = SouthPasadena.ENDGAME_CELLS;
+        }
+
+        engine = engineType.create();
+        engine.initPlayer(M, N, X, first, timeout_in_secs);
+
+        endgame = null;
+        lastPlayer = null;
+        if (engineType != Engine.SOUTHPASADENA){
+            endgame = Engine.SOUTHPASADENA.create();
+            endgame.initPlayer(M, N, X, first, timeout_in_secs);
+        }
+    }
+
+    /**
+     * @param M
+     * @param N
+     * @param X
+     * @param timeout
+     * @return The calibrated entry of the geometry, or null
+     */
+    private static CalibrationTable.Entry lookUp(int M, int N, int X, int timeout){
+        try {
+            CalibrationTable table = CalibrationTable.load(Paths.get(System.getProperty(CalibrationTable.FILE_PROPERTY, CalibrationTable.DEFAULT_FILE)));
+            return table.find(M, N, X, timeout);
+        } catch (IOException e) {
+            System.err.println("Portfolio: calibration table ignored (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    /**
+     * @param M
+     * @param N
+     * @param X
+     * @return The engine for a geometry which has not been calibrated
+     */
+    static Engine defaultEngine(int M, int N, int X){
+        return M * N >= MCTS_CELLS && X <= MCTS_MAX_X ? Engine.MCTS : Engine.SOUTHPASADENA;
+    }
+
+    /**
+     * @return The engine chosen at initialization
+     */
+    public Engine engine(){
+        return engineType;
+    }
+
+    /*
+     * Select the best column
+     */
+    public int selectColumn(CXBoard B){
+        lastPlayer = endgame != null && B.numOfFreeCells() <= switchCells ? endgame : engine;
+        return lastPlayer.selectColumn(B);
+    }
+
+    /*
+     * Statistics of the engine which selected the last move, if it reports any
+     */
+    public String lastMoveStats(){
+        if (lastPlayer instanceof CXStatsReporter){
+            String stats = ((CXStatsReporter) lastPlayer).lastMoveStats();
+            return stats != null ? "  [" + lastPlayer.playerName() + "]" + System.lineSeparator() + stats : null;
+        }
+        return null;
+    }
+
+    /*
+     * My software player's name
+     */
+    public String playerName() {
+        return "Portfolio";
+    }
+}
@@ -0,0 +1,108 @@
+package connectx.SouthPasadena;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import com.sun.management.ThreadMXBean;
+
+import connectx.CXBoard;
+import connectx.CXGameState;
+
+/**
+ * Check that SouthPasadena's search does not allocate.
+ * <p>
+ * For each geometry, positions are built by random play and searched to a
+ * fixed depth, first to warm up the JIT compiler, then on new positions while
+ * the bytes allocated by the thread are measured with ThreadMXBean. Setting up
+ * a position is not measured, only the search. The check fails (with exit
+ * status 1) if any search allocates.
+ * </p>
+ * <p>
+ * Usage: AllocationCheck [M N X depth]... (e.g. 7 8 5 8)
+ * </p>
+ */
+public class AllocationCheck {
+
+    private static final int POSITIONS = 16;
+    private static final int WARM_UP_ROUNDS = 5;
+
+    // Long enough for the searches never to be cut short
+    private static final int TIMEOUT = 3600;
+
+    private AllocationCheck() {
+    }
+
+    public static void main(String[] args) {
+
+        String[] geometries = args.length >= 4 ? args : new String[] {
+            "6", "7", "4", "9",
+            "7", "8", "5", "8",
+            "10", "10", "5", "6",
+            "20", "20", "7", "4"
+        };
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        boolean allocates = false;
+        for (int g = 0; g + 3 < geometries.length; g += 4){
+            int M = Integer.parseInt(geometries[g]);
+            int N = Integer.parseInt(geometries[g + 1]);
+            int X = Integer.parseInt(geometries[g + 2]);
+            int depth = Integer.parseInt(geometries[g + 3]);
+            allocates |= !check(threads, M, N, X, depth);
+        }
+        System.exit(allocates ? 1 : 0);
+    }
+
+    private static boolean check(ThreadMXBean threads, int M, int N, int X, int depth) {
+
+        Random random = new Random(M * 31 + N * 17 + X);
+        SouthPasadena player = new SouthPasadena();
+        player.initPlayer(M, N, X, true, TIMEOUT);
+
+        for (int round = 0; round < WARM_UP_ROUNDS; round++){
+            for (int i = 0; i < POSITIONS; i++){
+                player.loadPosition(randomPosition(M, N, X, random));
+                player.search(depth);
+            }
+        }
+
+        long bytes = 0;
+        long nodes = 0;
+        for (int i = 0; i < POSITIONS; i++){
+            player.loadPosition(randomPosition(M, N, X, random));
+            long nodesBefore = player.nodeCount();
+            long before = threads.getCurrentThreadAllocatedBytes();
+            player.search(depth);
+            long after = threads.getCurrentThreadAllocatedBytes();
+            bytes += after - before;
+            nodes += player.nodeCount() - nodesBefore;
+        }
+
+        System.out.println(String.format("%dx%dx%d, depth %d: %d nodes, %d bytes allocated (%.3f bytes per node)",
+                                         M, N, X, depth, nodes, bytes, (double) bytes / Math.max(1, nodes)));
+        return bytes == 0;
+    }
+
+    // A position of a quarter of the cells, reached by random moves which do not end the game,
+    // or the last position reached if every move ends it
+    private static CXBoard randomPosition(int M, int N, int X, Random random) {
+        CXBoard B = new CXBoard(M, N, X);
+        int[] open = new int[N];
+        while (B.numOfMarkedCells() < M * N / 4){
+            int count = 0;
+            for (int column : B.getAvailableColumns()){
+                if (B.markColumn(column) == CXGameState.OPEN){
+                    open[count++] = column;
+                }
+                B.unmarkColumn();
+            }
+            if (count == 0){
+                break;
+            }
+            B.markColumn(open[random.nextInt(count)]);
+        }
+        return B;
+    }
+}
@@ -0,0 +1,141 @@
+package connectx.SouthPasadena;
+
+import java.util.Random;
+
+/**
+ * Benchmark of the code KernelGenerator specialises for a geometry against the generic code.
+ * <p>
+ * For each geometry, the specialised code is generated and compiled (the time
+ * it takes is printed), then the positions of EvaluatorBenchmark's kind, leaves
+ * a few random moves below a root, are evaluated and checked for wins in every
+ * column by both versions, checking that they agree.
+ * </p>
+ * <p>
+ * Usage: CodegenBenchmark [M N X fill]... (e.g. 6 7 4 0.3)
+ * </p>
+ */
+public class CodegenBenchmark {
+
+    private static final int POSITIONS = 64;
+    private static final int LEAF_DEPTH = 6;
+    private static final long MEASURE_NANOS = 1_000_000_000L;
+
+    // Keeps the results alive, so that the calls are not optimised away
+    static long checksum;
+
+    private CodegenBenchmark() {
+    }
+
+    public static void main(String[] args) throws ReflectiveOperationException {
+
+        String[] geometries = args.length >= 4 ? args : new String[] {
+            "6", "7", "4", "0.1",
+            "6", "7", "4", "0.4",
+            "7", "8", "5", "0.3",
+            "8", "8", "4", "0.3"
+        };
+
+        for (int g = 0; g + 3 < geometries.length; g += 4){
+            int M = Integer.parseInt(geometries[g]);
+            int N = Integer.parseInt(geometries[g + 1]);
+            int X = Integer.parseInt(geometries[g + 2]);
+            double fill = Double.parseDouble(geometries[g + 3]);
+            if (!KernelGenerator.supports(M, N, X)){
+                System.out.println(M + "x" + N + "x" + X + ": no specialised code");
+                continue;
+            }
+            run(M, N, X, fill);
+        }
+    }
+
+    private static void run(int M, int N, int X, double fill) throws ReflectiveOperationException {
+
+        long start = System.nanoTime();
+        Object specialised = KernelGenerator.generate(M, N, X, SouthPasadena.MULTIPLIER_2, SouthPasadena.MULTIPLIER_3);
+        long compileMillis = (System.nanoTime() - start) / 1_000_000;
+
+        Random random = new Random(M * 31 + N * 17 + X);
+        FastBoard root = new FastBoard(M, N, X, null);
+        EvaluatorBenchmark.play(root, (int) (fill * M * N), random);
+
+        WindowEvaluator generic = new WindowEvaluator(M, N, X, SouthPasadena.MULTIPLIER_1, SouthPasadena.MULTIPLIER_2, SouthPasadena.MULTIPLIER_3, null);
+        generic.dropDeadWindows(root);
+        WindowEvaluator generated = new WindowEvaluator(M, N, X, SouthPasadena.MULTIPLIER_1, SouthPasadena.MULTIPLIER_2, SouthPasadena.MULTIPLIER_3,
+                                                        (WindowKernel) specialised);
+        generated.dropDeadWindows(root);
+
+        // Leaves of a search from the root, on boards with the generic and the specialised win check
+        FastBoard[] genericPositions = new FastBoard[POSITIONS];
+        FastBoard[] generatedPositions = new FastBoard[POSITIONS];
+        for (int i = 0; i < POSITIONS; i++){
+            FastBoard b = new FastBoard(M, N, X, null);
+            b.copyFrom(root);
+            EvaluatorBenchmark.play(b, root.moveCount() + LEAF_DEPTH, random);
+            genericPositions[i] = b;
+
+            FastBoard s = new FastBoard(M, N, X, null);
+            s.copyFrom(b);
+            s.setWinCheck((WinCheck) specialised);
+            generatedPositions[i] = s;
+
+            for (int p = 0; p < 2; p++){
+                if (generic.evaluate(b, p) != generated.evaluate(s, p)){
+                    throw new IllegalStateException("Generic and specialised scores differ on " + M + "x" + N + "x" + X);
+                }
+                for (int row = 0; row < M; row++){
+                    for (int col = 0; col < N; col++){
+                        if (b.isWinningCell(row, col, p) != s.isWinningCell(row, col, p)){
+                            throw new IllegalStateException("Generic and specialised win checks differ on " + M + "x" + N + "x" + X);
+                        }
+                    }
+                }
+            }
+        }
+
+        System.out.println(String.format("%dx%dx%d, %d%% full, compiled in %d ms: evaluation %.1f ns generic, %.1f ns specialised;"
+                                         + " win check of all columns %.1f ns generic, %.1f ns specialised",
+                                         M, N, X, Math.round(fill * 100), compileMillis,
+                                         measureEvaluation(genericPositions, generic), measureEvaluation(generatedPositions, generated),
+                                         measureWinCheck(genericPositions), measureWinCheck(generatedPositions)));
+    }
+
+    // Average time of an evaluation, after a warm-up run of the same length
+    private static double measureEvaluation(FastBoard[] positions, WindowEvaluator evaluator) {
+
+        long sink = 0;
+        double nanos = 0;
+        for (int run = 0; run < 2; run++){
+            long calls = 0;
+            long start = System.nanoTime();
+            while (System.nanoTime() - start < MEASURE_NANOS){
+                for (int i = 0; i < positions.length; i++){
+                    sink += evaluator.evaluate(positions[i], i & 1);
+                }
+                calls += positions.length;
+            }
+            nanos = (double) (System.nanoTime() - start) / calls;
+        }
+        checksum += sink;
+        return nanos;
+    }
+
+    // Average time of a check of the winning columns of a player, after a warm-up run of the same length
+    private static double measureWinCheck(FastBoard[] positions) {
+
+        long sink = 0;
+        double nanos = 0;
+        for (int run = 0; run < 2; run++){
+            long calls = 0;
+            long start = System.nanoTime();
+            while (System.nanoTime() - start < MEASURE_NANOS){
+                for (int i = 0; i < positions.length; i++){
+                    sink += positions[i].winningColumns(i & 1);
+                }
+                calls += positions.length;
+            }
+            nanos = (double) (System.nanoTime() - start) / calls;
+        }
+        checksum += sink;
+        return nanos;
+    }
+}
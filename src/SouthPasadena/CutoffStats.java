@@ -0,0 +1,53 @@
+package connectx.SouthPasadena;
+
+/**
+ * Cutoffs of SouthPasadena's search, counted by cell of the move which
+ * produced them (a column at a given height), as collected by
+ * MoveOrderingGenerator. The moves searched are counted in the same way,
+ * since the columns searched first get more chances to cut off.
+ */
+class CutoffStats {
+
+    // Cutoffs by cell of the move which produced them, and moves searched by cell (bit row*N+col)
+    final long[] cellCutoffs;
+    final long[] cellMoves;
+
+    // Cutoffs, and those produced by the first move searched
+    long cutoffs;
+    long firstMoveCutoffs;
+
+    /**
+     * @param M
+     * @param N
+     */
+    CutoffStats(int M, int N) {
+        this.cellCutoffs = new long[M * N];
+        this.cellMoves = new long[M * N];
+    }
+
+    /**
+     * @param bit - Cell of the move searched
+     */
+    void searched(int bit) {
+        cellMoves[bit]++;
+    }
+
+    /**
+     * @param bit - Cell of the move which produced the cutoff
+     * @param searched - Number of moves searched at the node, the cutting one included
+     */
+    void record(int bit, int searched) {
+        cellCutoffs[bit]++;
+        cutoffs++;
+        if (searched == 1){
+            firstMoveCutoffs++;
+        }
+    }
+
+    /**
+     * @return The fraction of the cutoffs produced by the first move searched
+     */
+    double firstMoveRate() {
+        return cutoffs == 0 ? 0.0 : (double) firstMoveCutoffs / cutoffs;
+    }
+}
@@ -0,0 +1,289 @@
+package connectx.SouthPasadena;
+
+import connectx.CXBoard;
+
+/**
+ * Depth-first proof-number search (df-pn) solver.
+ * <p>
+ * It decides whether the player to move in a position has a forced win,
+ * regardless of how long the winning sequence is. Proof and disproof numbers
+ * are kept in a fixed-size table (so memory is bounded, and entries are simply
+ * overwritten on collisions) and subtrees are re-expanded when their
+ * thresholds are exceeded. The search is written in the negamax form: for
+ * each node phi is the proof number of its player to move and delta the
+ * proof number of the other player. Positions are keyed by their canonical
+ * hash, so a position and its mirror image share the same entry.
+ * </p>
+ * <p>
+ * Standalone usage:
+ * <pre>
+ *  DfpnSolver solver = new DfpnSolver(M, N, X, zobristTable, columnOrder, DfpnSolver.DEFAULT_TABLE_SIZE);
+ *  if (solver.solve(B, maxNodes, deadline) == DfpnSolver.PROVEN) {
+ *      int column = solver.bestColumn();
+ *  }
+ * </pre>
+ * </p>
+ */
+public class DfpnSolver {
+
+    // Results
+    public static final int PROVEN = 1;     // The player to move wins
+    public static final int DISPROVEN = -1; // The player to move does not win (draw or loss)
+    public static final int UNKNOWN = 0;    // Node or time budget exhausted
+
+    public static final int DEFAULT_TABLE_SIZE = 1 << 20;
+
+    private static final int INF = Integer.MAX_VALUE / 4;
+
+    // Keys of the positions searched for the second player, so that the table can be shared
+    private static final long SECOND_ATTACKER = 0x5DEECE66DL;
+
+    private final FastBoard board;
+    private final int[] columnOrder;
+
+    // Proof and disproof numbers table
+    private final int tableMask;
+    private final long[] keys;
+    private final int[] phis;
+    private final int[] deltas;
+
+    // Per-ply move lists
+    private final int[][] moveLists;
+
+    private int attacker;
+    private long attackerKey;
+
+    private long maxNodes;
+    private long deadline;
+    private boolean aborted;
+    private long nodes;
+
+    private int bestColumn;
+
+    /**
+     * @param M
+     * @param N
+     * @param X
+     * @param zobristTable - Zobrist table used to hash positions
+     * @param columnOrder - Static order in which columns are explored
+     * @param tableSize - Number of table entries, must be a power of 2
+     */
+    public DfpnSolver(int M, int N, int X, long[][][] zobristTable, int[] columnOrder, int tableSize) {
+        if (Integer.bitCount(tableSize) != 1 || tableSize < 2){
+            throw new IllegalArgumentException("Table size must be a power of 2");
+        }
+        this.board = new FastBoard(M, N, X, zobristTable);
+        this.columnOrder = columnOrder.clone();
+        this.tableMask = tableSize - 1;
+        this.keys = new long[tableSize];
+        this.phis = new int[tableSize];
+        this.deltas = new int[tableSize];
+        this.moveLists = new int[M * N + 1][N];
+    }
+
+    /**
+     * Checks wins with the given code from now on.
+     *
+     * @param check - Win check specialised for the geometry, or null for the generic one
+     */
+    public void setWinCheck(WinCheck check) {
+        board.setWinCheck(check);
+    }
+
+    /**
+     * Tries to prove that the player to move has a forced win.
+     *
+     * @param B - The position, which must be open
+     * @param maxNodes - Maximum number of nodes to visit
+     * @param deadlineMillis - Time (System.currentTimeMillis) at which the search is abandoned
+     * @return PROVEN (with a winning column), DISPROVEN or UNKNOWN
+     */
+    public int solve(CXBoard B, long maxNodes, long deadlineMillis) {
+
+        board.load(B);
+        attacker = board.currentPlayer();
+        attackerKey = attacker == 0 ? 0L : SECOND_ATTACKER;
+        this.maxNodes = maxNodes;
+        deadline = deadlineMillis;
+        aborted = false;
+        nodes = 0;
+        bestColumn = -1;
+
+        mid(INF, INF, 0);
+        if (aborted){
+            return UNKNOWN;
+        }
+
+        if (lookupPhi(key(board.canonicalHash())) == 0){
+            // The winning move is an immediate win or one leading to a child whose delta is 0
+            for (int c : columnOrder){
+                if (board.isWinningColumn(c, attacker) || (board.canPlay(c) && lookupDelta(key(board.canonicalHashAfter(c))) == 0)){
+                    bestColumn = c;
+                    break;
+                }
+            }
+            // The entry of the proving child may have been replaced since, then the win cannot be played
+            return bestColumn >= 0 ? PROVEN : UNKNOWN;
+        }
+        return DISPROVEN;
+    }
+
+    /**
+     * @return The winning column found by the last proof, or -1
+     */
+    public int bestColumn() {
+        return bestColumn;
+    }
+
+    /**
+     * @return The number of nodes visited by the last call to solve
+     */
+    public long nodes() {
+        return nodes;
+    }
+
+    /**
+     * Multiple iterative deepening step: expands the current node until its phi
+     * or delta reaches the given thresholds.
+     */
+    private void mid(int thPhi, int thDelta, int ply) {
+
+        if (++nodes >= maxNodes || ((nodes & 1023) == 0 && System.currentTimeMillis() >= deadline)){
+            aborted = true;
+        }
+        if (aborted){
+            return;
+        }
+
+        FastBoard b = board;
+        long key = key(b.canonicalHash());
+        int me = b.currentPlayer();
+        int you = 1 - me;
+        boolean isOrNode = me == attacker;
+
+        // A full board is a draw, which is a success only for the defender
+        if (b.isFull()){
+            if (isOrNode){
+                store(key, INF, 0);
+            }
+            else{
+                store(key, 0, INF);
+            }
+            return;
+        }
+
+        // Immediate win of the player to move
+        for (int c : columnOrder){
+            if (b.isWinningColumn(c, me)){
+                store(key, 0, INF);
+                return;
+            }
+        }
+
+        // Immediate threats of the other player: with two of them we lose, with one we must block
+        int threats = 0;
+        int forcedColumn = -1;
+        for (int c : columnOrder){
+            if (b.isWinningColumn(c, you)){
+                threats++;
+                forcedColumn = c;
+            }
+        }
+        if (threats > 1){
+            store(key, INF, 0);
+            return;
+        }
+
+        int[] moves = moveLists[ply];
+        int count = 0;
+        if (forcedColumn >= 0){
+            moves[count++] = forcedColumn;
+        }
+        else{
+            for (int c : columnOrder){
+                if (b.canPlay(c)){
+                    moves[count++] = c;
+                }
+            }
+        }
+
+        while (true){
+
+            // phi is the minimum delta of the children, delta the sum of their phis
+            int phi = INF;
+            long delta = 0;
+            int bestChild = -1;
+            int bestChildPhi = 0;
+            int secondDelta = INF;
+
+            for (int k = 0; k < count; k++){
+                long childKey = key(b.canonicalHashAfter(moves[k]));
+                int childPhi = lookupPhi(childKey);
+                int childDelta = lookupDelta(childKey);
+
+                delta += childPhi;
+                if (childDelta < phi){
+                    secondDelta = phi;
+                    phi = childDelta;
+                    bestChild = moves[k];
+                    bestChildPhi = childPhi;
+                }
+                else if (childDelta < secondDelta){
+                    secondDelta = childDelta;
+                }
+            }
+            int cappedDelta = (int) Math.min(delta, INF);
+
+            if (phi >= thPhi || cappedDelta >= thDelta){
+                store(key, phi, cappedDelta);
+                return;
+            }
+
+            // Thresholds of the most proving child (with the 1+epsilon trick on the second best)
+            int childThPhi = (int) Math.min((long) thDelta - cappedDelta + bestChildPhi, INF);
+            int childThDelta = (int) Math.min(thPhi, (long) secondDelta + secondDelta / 4 + 1);
+
+            b.play(bestChild);
+            mid(childThPhi, childThDelta, ply + 1);
+            b.undo();
+
+            if (aborted){
+                return;
+            }
+        }
+    }
+
+    // Positions are keyed differently for the two attackers, since OR and AND nodes are swapped
+    private long key(long hash) {
+        return hash ^ attackerKey;
+    }
+
+    // Entries are stored in buckets of two slots, the most recently stored one first,
+    // so that two siblings mapped to the same bucket do not keep evicting each other
+    private int bucket(long key) {
+        return (int) (key ^ (key >>> 32)) & tableMask & ~1;
+    }
+
+    private void store(long key, int phi, int delta) {
+        int slot = bucket(key);
+        if (keys[slot] != key){
+            keys[slot + 1] = keys[slot];
+            phis[slot + 1] = phis[slot];
+            deltas[slot + 1] = deltas[slot];
+            keys[slot] = key;
+        }
+        phis[slot] = phi;
+        deltas[slot] = delta;
+    }
+
+    // Unknown positions have proof and disproof numbers equal to 1
+    private int lookupPhi(long key) {
+        int slot = bucket(key);
+        return keys[slot] == key ? phis[slot] : (keys[slot + 1] == key ? phis[slot + 1] : 1);
+    }
+
+    private int lookupDelta(long key) {
+        int slot = bucket(key);
+        return keys[slot] == key ? deltas[slot] : (keys[slot + 1] == key ? deltas[slot + 1] : 1);
+    }
+}
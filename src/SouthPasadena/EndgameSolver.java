@@ -0,0 +1,281 @@
+package connectx.SouthPasadena;
+
+import connectx.CXBoard;
+
+/**
+ * Exact solver used by SouthPasadena when few free cells are left on the board.
+ * <p>
+ * It runs a negamax alpha-beta search to the end of the game on a FastBoard,
+ * without any heuristic. Scores are exact game values: 0 for a draw,
+ * WIN - ply for a win of the player to move in ply plies and -(WIN - ply)
+ * for a loss, so quick wins and slow losses are preferred. Solved positions
+ * are kept in a fixed-size transposition table which survives between moves,
+ * so once a position has been solved the following ones are solved almost
+ * instantly.
+ * </p>
+ */
+public class EndgameSolver {
+
+    // Score of a win in 0 plies, larger than any distance to the end of the game
+    public static final int WIN = 1 << 20;
+
+    // Transposition table size (entries), must be a power of 2
+    private static final int TABLE_SIZE = 1 << 20;
+
+    // Entry flags
+    private static final int EXACT = 0;
+    private static final int LOWER = 1;
+    private static final int UPPER = 2;
+
+    private final FastBoard board;
+    private final int[] columnOrder;
+
+    // Transposition table: key, score (relative to the stored node), flag and best move
+    private final long[] keys = new long[TABLE_SIZE];
+    private final int[] scores = new int[TABLE_SIZE];
+    private final byte[] flags = new byte[TABLE_SIZE];
+    private final short[] bestMoves = new short[TABLE_SIZE];
+
+    // Per-ply move lists
+    private final int[][] moveLists;
+
+    private long deadline;
+    private boolean aborted;
+    private long nodes;
+
+    private int bestColumn;
+    private int bestScore;
+
+    /**
+     * @param M
+     * @param N
+     * @param X
+     * @param zobristTable - Zobrist table used to hash positions
+     * @param columnOrder - Static order in which columns are explored
+     */
+    public EndgameSolver(int M, int N, int X, long[][][] zobristTable, int[] columnOrder) {
+        this.board = new FastBoard(M, N, X, zobristTable);
+        this.columnOrder = columnOrder.clone();
+        this.moveLists = new int[M * N + 1][N];
+    }
+
+    /**
+     * Checks wins with the given code from now on.
+     *
+     * @param check - Win check specialised for the geometry, or null for the generic one
+     */
+    public void setWinCheck(WinCheck check) {
+        board.setWinCheck(check);
+    }
+
+    /**
+     * Solves the position, if possible before the deadline.
+     *
+     * @param B - The position to solve, which must be open
+     * @param deadlineMillis - Time (System.currentTimeMillis) at which the search is abandoned
+     * @return True if the position has been solved, false if time ran out
+     */
+    public boolean solve(CXBoard B, long deadlineMillis) {
+
+        board.load(B);
+        deadline = deadlineMillis;
+        aborted = false;
+        nodes = 0;
+
+        int score = negamax(-WIN, WIN, 0);
+        if (aborted){
+            return false;
+        }
+
+        bestScore = score;
+        bestColumn = board.toCanonical(bestMoves[index(board.canonicalHash())]);
+        return true;
+    }
+
+    /**
+     * @return The best column found by the last successful solve
+     */
+    public int bestColumn() {
+        return bestColumn;
+    }
+
+    /**
+     * @return The exact value of the last solved position for the player to move
+     */
+    public int score() {
+        return bestScore;
+    }
+
+    /**
+     * @return The number of nodes visited by the last call to solve
+     */
+    public long nodes() {
+        return nodes;
+    }
+
+    /**
+     * @param score
+     * @return True if the score is a win or a loss (as opposed to a draw)
+     */
+    public static boolean isDecisive(int score) {
+        return score != 0;
+    }
+
+    private int negamax(int alpha, int beta, int ply) {
+
+        if ((++nodes & 1023) == 0 && System.currentTimeMillis() >= deadline){
+            aborted = true;
+        }
+        if (aborted){
+            return 0;
+        }
+
+        FastBoard b = board;
+        int me = b.currentPlayer();
+        int you = 1 - me;
+        long hash = b.canonicalHash();
+        int slot = index(hash);
+
+        // Immediate win
+        for (int c : columnOrder){
+            if (b.isWinningColumn(c, me)){
+                store(slot, hash, WIN - (ply + 1), EXACT, c, ply);
+                return WIN - (ply + 1);
+            }
+        }
+
+        // Immediate threats of the opponent
+        int threats = 0;
+        int forcedColumn = -1;
+        for (int c : columnOrder){
+            if (b.isWinningColumn(c, you)){
+                threats++;
+                forcedColumn = c;
+            }
+        }
+        if (threats > 1){
+            // We can block only one of them
+            store(slot, hash, -(WIN - (ply + 2)), EXACT, forcedColumn, ply);
+            return -(WIN - (ply + 2));
+        }
+
+        // Mate distance bounds: we cannot win before ply + 3 nor lose before ply + 2
+        alpha = Math.max(alpha, -(WIN - (ply + 2)));
+        beta = Math.min(beta, WIN - (ply + 3));
+        if (alpha >= beta){
+            return alpha;
+        }
+
+        // Transposition table probe
+        int ttMove = -1;
+        if (keys[slot] == hash){
+            int stored = fromTable(scores[slot], ply);
+            int flag = flags[slot];
+            if (flag == EXACT || (flag == LOWER && stored >= beta) || (flag == UPPER && stored <= alpha)){
+                return stored;
+            }
+            ttMove = b.toCanonical(bestMoves[slot]);
+        }
+
+        int[] moves = moveLists[ply];
+        int count = orderMoves(moves, forcedColumn, ttMove, you);
+
+        int originalAlpha = alpha;
+        int best = -WIN;
+        int bestMove = moves[0];
+
+        for (int k = 0; k < count; k++){
+            int c = moves[k];
+            int score;
+
+            b.play(c);
+            if (b.isFull()){
+                score = 0;
+            }
+            else if (b.isWinningColumn(c, you)){
+                // The opponent wins by playing on top of our token
+                score = -(WIN - (ply + 2));
+            }
+            else{
+                score = -negamax(-beta, -alpha, ply + 1);
+            }
+            b.undo();
+
+            if (aborted){
+                return 0;
+            }
+
+            if (score > best){
+                best = score;
+                bestMove = c;
+            }
+            if (best > alpha){
+                alpha = best;
+            }
+            if (alpha >= beta){
+                break;
+            }
+        }
+
+        int flag = best <= originalAlpha ? UPPER : (best >= beta ? LOWER : EXACT);
+        store(slot, hash, best, flag, bestMove, ply);
+        return best;
+    }
+
+    /**
+     * Fills the move list: only the forced block if there is one, otherwise the
+     * transposition table move first, then the moves that do not give the opponent
+     * an immediate win in the static column order, then the losing ones.
+     */
+    private int orderMoves(int[] moves, int forcedColumn, int ttMove, int you) {
+
+        FastBoard b = board;
+
+        if (forcedColumn >= 0){
+            moves[0] = forcedColumn;
+            return 1;
+        }
+
+        int count = 0;
+        if (ttMove >= 0 && b.canPlay(ttMove)){
+            moves[count++] = ttMove;
+        }
+
+        int losing = 0;
+        int[] losingMoves = moveLists[moveLists.length - 1];
+        for (int c : columnOrder){
+            if (c == ttMove || !b.canPlay(c)){
+                continue;
+            }
+            int above = b.freeRow(c) - 1;
+            if (above >= 0 && b.isWinningCell(above, c, you)){
+                losingMoves[losing++] = c;
+            }
+            else{
+                moves[count++] = c;
+            }
+        }
+        for (int k = 0; k < losing; k++){
+            moves[count++] = losingMoves[k];
+        }
+
+        return count;
+    }
+
+    private int index(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & (TABLE_SIZE - 1);
+    }
+
+    // Scores are stored relative to the node, so that they are valid at any ply,
+    // and moves in the canonical orientation of the position
+    private void store(int slot, long hash, int score, int flag, int move, int ply) {
+        keys[slot] = hash;
+        scores[slot] = score > 0 ? score + ply : (score < 0 ? score - ply : 0);
+        flags[slot] = (byte) flag;
+        bestMoves[slot] = (short) board.toCanonical(move);
+    }
+
+    private int fromTable(int score, int ply) {
+        return score > 0 ? score - ply : (score < 0 ? score + ply : 0);
+    }
+}
@@ -0,0 +1,61 @@
+package connectx.SouthPasadena;
+
+/**
+ * Direct-mapped cache of static evaluations.
+ * <p>
+ * Only heuristic scores of positions are stored, keyed by the canonical hash
+ * of the position, so the same leaves reached again in the following
+ * iterations of iterative deepening are not evaluated twice. The cache is kept
+ * small enough to stay in the L2/L3 cache: an entry is 12 bytes, and a new
+ * entry always replaces the old one in its slot.
+ * </p>
+ */
+public class EvaluationCache {
+
+    public static final int DEFAULT_ENTRIES = 1 << 16;
+
+    private final int mask;
+    private final long[] keys;
+    private final int[] scores;
+
+    /**
+     * @param entries - Number of entries, rounded down to a power of 2
+     */
+    public EvaluationCache(int entries) {
+        int size = Integer.highestOneBit(Math.max(1, entries));
+        this.mask = size - 1;
+        this.keys = new long[size];
+        this.scores = new int[size];
+    }
+
+    /**
+     * @param key - Hash of the position
+     * @return The index of the position's entry, or -1 if the position is not cached
+     */
+    public int find(long key) {
+        int slot = slot(key);
+        return keys[slot] == key ? slot : -1;
+    }
+
+    /**
+     * @param index - A value returned by find
+     * @return The cached score
+     */
+    public int score(int index) {
+        return scores[index];
+    }
+
+    /**
+     * @param key - Hash of the position
+     * @param score
+     */
+    public void store(long key, int score) {
+        int slot = slot(key);
+        keys[slot] = key;
+        scores[slot] = score;
+    }
+
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+}
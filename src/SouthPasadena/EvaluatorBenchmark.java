@@ -0,0 +1,129 @@
+package connectx.SouthPasadena;
+
+import java.util.Random;
+
+/**
+ * Benchmark of the scalar and vectorised window evaluation on large boards.
+ * <p>
+ * For each geometry, a root is built by random play up to a given fraction of
+ * the cells and its dead windows are dropped as in a game. The positions
+ * evaluated are leaves a few random moves below the root, and every one is
+ * evaluated by both evaluators, checking that they agree.
+ * </p>
+ * <p>
+ * Usage: EvaluatorBenchmark [M N X fill]... (e.g. 20 20 7 0.3), to be run with
+ * --add-modules jdk.incubator.vector to benchmark the vectorised kernel.
+ * </p>
+ */
+public class EvaluatorBenchmark {
+
+    private static final int POSITIONS = 64;
+    private static final int LEAF_DEPTH = 6;
+    private static final long MEASURE_NANOS = 1_000_000_000L;
+
+    // Keeps the scores alive, so that the evaluations are not optimised away
+    static long checksum;
+
+    private EvaluatorBenchmark() {
+    }
+
+    public static void main(String[] args) {
+
+        String[] geometries = args.length >= 4 ? args : new String[] {
+            "20", "20", "7", "0.1",
+            "20", "20", "7", "0.3",
+            "30", "30", "10", "0.2",
+            "50", "50", "10", "0.1",
+            "50", "50", "10", "0.3"
+        };
+
+        WindowKernel probe = WindowEvaluator.loadKernel();
+        if (probe == null){
+            System.out.println("Vectorised kernel not available, only the scalar evaluator is measured");
+        }
+
+        for (int g = 0; g + 3 < geometries.length; g += 4){
+            int M = Integer.parseInt(geometries[g]);
+            int N = Integer.parseInt(geometries[g + 1]);
+            int X = Integer.parseInt(geometries[g + 2]);
+            double fill = Double.parseDouble(geometries[g + 3]);
+            run(M, N, X, fill, probe != null);
+        }
+    }
+
+    private static void run(int M, int N, int X, double fill, boolean vector) {
+
+        Random random = new Random(M * 31 + N * 17 + X);
+        FastBoard root = new FastBoard(M, N, X, null);
+        play(root, (int) (fill * M * N), random);
+
+        WindowEvaluator scalar = new WindowEvaluator(M, N, X, SouthPasadena.MULTIPLIER_1, SouthPasadena.MULTIPLIER_2, SouthPasadena.MULTIPLIER_3, null);
+        scalar.dropDeadWindows(root);
+        WindowEvaluator vectorised = null;
+        if (vector){
+            vectorised = new WindowEvaluator(M, N, X, SouthPasadena.MULTIPLIER_1, SouthPasadena.MULTIPLIER_2, SouthPasadena.MULTIPLIER_3,
+                                             WindowEvaluator.loadKernel());
+            vectorised.dropDeadWindows(root);
+        }
+
+        // Leaves of a search from the root
+        FastBoard[] positions = new FastBoard[POSITIONS];
+        for (int i = 0; i < POSITIONS; i++){
+            FastBoard b = new FastBoard(M, N, X, null);
+            b.copyFrom(root);
+            play(b, root.moveCount() + LEAF_DEPTH, random);
+            positions[i] = b;
+
+            for (int p = 0; vector && p < 2; p++){
+                if (scalar.evaluate(b, p) != vectorised.evaluate(b, p)){
+                    throw new IllegalStateException("Scalar and vectorised scores differ on " + M + "x" + N + "x" + X);
+                }
+            }
+        }
+
+        String line = String.format("%dx%dx%d, %d%% full, %d live windows of %d: scalar %.0f ns",
+                                    M, N, X, Math.round(fill * 100), scalar.liveWindows(), WindowEvaluator.windowCount(M, N, X),
+                                    measure(positions, scalar));
+        if (vector){
+            line += String.format(", vectorised %.0f ns", measure(positions, vectorised));
+        }
+        System.out.println(line);
+    }
+
+    // Plays random non-winning moves up to the given number of tokens, or until every move wins
+    static void play(FastBoard b, int tokens, Random random) {
+        int[] columns = new int[b.N];
+        while (b.moveCount() < tokens && !b.isFull()){
+            int count = 0;
+            for (int col = 0; col < b.N; col++){
+                if (b.canPlay(col) && !b.isWinningColumn(col, b.currentPlayer())){
+                    columns[count++] = col;
+                }
+            }
+            if (count == 0){
+                return;
+            }
+            b.play(columns[random.nextInt(count)]);
+        }
+    }
+
+    // Average time of an evaluation, after a warm-up run of the same length
+    private static double measure(FastBoard[] positions, WindowEvaluator evaluator) {
+
+        long sink = 0;
+        double nanos = 0;
+        for (int run = 0; run < 2; run++){
+            long evaluations = 0;
+            long start = System.nanoTime();
+            while (System.nanoTime() - start < MEASURE_NANOS){
+                for (int i = 0; i < positions.length; i++){
+                    sink += evaluator.evaluate(positions[i], i & 1);
+                }
+                evaluations += positions.length;
+            }
+            nanos = (double) (System.nanoTime() - start) / evaluations;
+        }
+        checksum += sink;
+        return nanos;
+    }
+}
@@ -0,0 +1,438 @@
+package connectx.SouthPasadena;
+
+import connectx.CXBoard;
+import connectx.CXCell;
+import connectx.CXCellState;
+
+/**
+ * Allocation-free board used by the solvers.
+ * <p>
+ * It mirrors a CXBoard with primitive arrays: cells are stored row-major with
+ * row 0 at the top, as in CXBoard, and the free row of each column is kept
+ * like CXBoard's own first free row positions. Players are 0 (first) and 1
+ * (second). When a Zobrist table is given, the board keeps the hash of the
+ * position up to date with the same keys used by SouthPasadena's
+ * computeZobristHash.
+ * </p>
+ * <p>
+ * The hash of the left-right mirror image of the position is maintained as
+ * well. The smaller of the two is the canonical hash, which is the same for a
+ * position and its mirror image, so tables indexed by it are shared between
+ * the two. Moves stored in such tables must be converted with toCanonical.
+ * </p>
+ * <p>
+ * Each player's tokens are also kept in a bitboard, with the cell (row, col)
+ * at bit row*N+col of the board, split in 64-bit words.
+ * </p>
+ * <p>
+ * Optionally, the board also keeps a LiveWindows tracker up to date, to know
+ * whether the players can still win.
+ * </p>
+ * <p>
+ * On boards of at most 64 cells, the win check can be replaced by the code
+ * KernelGenerator specialises for the geometry.
+ * </p>
+ */
+public class FastBoard {
+
+    public static final int FREE = -1;
+
+    public final int M;
+    public final int N;
+    public final int X;
+
+    private final int[] cells;     // -1 free, 0 first player, 1 second player
+    private final int[] freeRow;   // First free row of each column, -1 if the column is full
+    private final int[] moves;     // Played columns, in order
+    private int moveCount;
+    private int currentPlayer;
+
+    private final long[][] bitboards;  // Tokens of each player
+
+    private LiveWindows liveWindows;   // null if the live windows are not tracked
+
+    private WinCheck winCheck;         // null to use the generic win check
+
+    private final long[][][] zobristTable;
+    private long hash;
+    private long mirrorHash;
+
+    /**
+     * @param M
+     * @param N
+     * @param X
+     * @param zobristTable - SouthPasadena's Zobrist table, or null if the hash is not needed
+     */
+    public FastBoard(int M, int N, int X, long[][][] zobristTable) {
+        this.M = M;
+        this.N = N;
+        this.X = X;
+        this.cells = new int[M * N];
+        this.freeRow = new int[N];
+        this.moves = new int[M * N];
+        this.bitboards = new long[2][(M * N + 63) / 64];
+        this.zobristTable = zobristTable;
+        reset();
+    }
+
+    /**
+     * Empties the board
+     */
+    public void reset() {
+        for (int k = 0; k < cells.length; k++){
+            cells[k] = FREE;
+        }
+        for (int j = 0; j < N; j++){
+            freeRow[j] = M - 1;
+        }
+        moveCount = 0;
+        currentPlayer = 0;
+        for (int w = 0; w < bitboards[0].length; w++){
+            bitboards[0][w] = 0L;
+            bitboards[1][w] = 0L;
+        }
+
+        hash = 0L;
+        if (zobristTable != null){
+            for (int i = 0; i < M; i++){
+                for (int j = 0; j < N; j++){
+                    hash ^= zobristTable[i][j][2];
+                }
+            }
+        }
+        // The empty board is symmetric
+        mirrorHash = hash;
+
+        if (liveWindows != null){
+            liveWindows.reset();
+        }
+    }
+
+    /**
+     * Keeps a tracker of the live windows up to date with the board from now on.
+     *
+     * @param tracker - A tracker for the same geometry
+     */
+    public void trackLiveWindows(LiveWindows tracker) {
+        liveWindows = tracker;
+        loadLiveWindows();
+    }
+
+    /**
+     * @return The tracker of the live windows, or null if they are not tracked
+     */
+    public LiveWindows liveWindows() {
+        return liveWindows;
+    }
+
+    /**
+     * Checks wins with the given code from now on.
+     *
+     * @param check - Win check generated for the geometry of a board of at most 64 cells, or null for the generic one
+     */
+    public void setWinCheck(WinCheck check) {
+        if (check != null && M * N > 64){
+            throw new IllegalArgumentException("Specialised win checks need a single-word board");
+        }
+        winCheck = check;
+    }
+
+    // Sets the tracker to the tokens on the board
+    private void loadLiveWindows() {
+        if (liveWindows == null){
+            return;
+        }
+        liveWindows.reset();
+        for (int k = 0; k < cells.length; k++){
+            if (cells[k] != FREE){
+                liveWindows.add(k, cells[k]);
+            }
+        }
+    }
+
+    /**
+     * Sets the board to the position of a CXBoard, replaying its moves.
+     *
+     * @param B
+     */
+    public void load(CXBoard B) {
+        reset();
+        for (CXCell c : B.getMarkedCells()){
+            play(c.j);
+        }
+    }
+
+    /**
+     * Sets the board to the position of another board of the same size.
+     *
+     * @param other
+     */
+    public void copyFrom(FastBoard other) {
+        System.arraycopy(other.cells, 0, cells, 0, cells.length);
+        System.arraycopy(other.freeRow, 0, freeRow, 0, N);
+        System.arraycopy(other.moves, 0, moves, 0, other.moveCount);
+        moveCount = other.moveCount;
+        currentPlayer = other.currentPlayer;
+        System.arraycopy(other.bitboards[0], 0, bitboards[0], 0, bitboards[0].length);
+        System.arraycopy(other.bitboards[1], 0, bitboards[1], 0, bitboards[1].length);
+        hash = other.hash;
+        mirrorHash = other.mirrorHash;
+        loadLiveWindows();
+    }
+
+    public boolean canPlay(int col) {
+        return freeRow[col] >= 0;
+    }
+
+    public int freeRow(int col) {
+        return freeRow[col];
+    }
+
+    /**
+     * @param row
+     * @param col
+     * @return The player owning the cell, or FREE
+     */
+    public int cell(int row, int col) {
+        return cells[row * N + col];
+    }
+
+    /**
+     * @param row
+     * @param col
+     * @return The cell state in CXBoard terms
+     */
+    public CXCellState cellState(int row, int col) {
+        int p = cells[row * N + col];
+        return p == FREE ? CXCellState.FREE : (p == 0 ? CXCellState.P1 : CXCellState.P2);
+    }
+
+    /**
+     * @param player
+     * @return The bitboard of the player's tokens, which must not be modified
+     */
+    public long[] bitboard(int player) {
+        return bitboards[player];
+    }
+
+    public int currentPlayer() {
+        return currentPlayer;
+    }
+
+    public int moveCount() {
+        return moveCount;
+    }
+
+    public int lastMove() {
+        return moveCount == 0 ? -1 : moves[moveCount - 1];
+    }
+
+    public boolean isFull() {
+        return moveCount == M * N;
+    }
+
+    public int freeCells() {
+        return M * N - moveCount;
+    }
+
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * @param col - A non-full column
+     * @return The hash of the position after the current player plays in the column
+     */
+    public long hashAfter(int col) {
+        int row = freeRow[col];
+        return hash ^ zobristTable[row][col][2] ^ zobristTable[row][col][currentPlayer];
+    }
+
+    /**
+     * @return The hash of the mirror image of the position
+     */
+    public long mirrorHash() {
+        return mirrorHash;
+    }
+
+    /**
+     * @return The hash shared by the position and its mirror image
+     */
+    public long canonicalHash() {
+        return Math.min(hash, mirrorHash);
+    }
+
+    /**
+     * @param col - A non-full column
+     * @return The canonical hash of the position after the current player plays in the column
+     */
+    public long canonicalHashAfter(int col) {
+        int row = freeRow[col];
+        int mirrorCol = N - 1 - col;
+        long after = hash ^ zobristTable[row][col][2] ^ zobristTable[row][col][currentPlayer];
+        long mirrorAfter = mirrorHash ^ zobristTable[row][mirrorCol][2] ^ zobristTable[row][mirrorCol][currentPlayer];
+        return Math.min(after, mirrorAfter);
+    }
+
+    /**
+     * @return True if the canonical hash is the one of the mirror image
+     */
+    public boolean isMirrored() {
+        return mirrorHash < hash;
+    }
+
+    /**
+     * Converts a column between the actual orientation of the position and the canonical one
+     * (the conversion is the same in both directions).
+     *
+     * @param col
+     * @return The converted column
+     */
+    public int toCanonical(int col) {
+        return mirrorHash < hash ? N - 1 - col : col;
+    }
+
+    /**
+     * @return True if the position is equal to its mirror image
+     */
+    public boolean isSymmetric() {
+        for (int i = 0; i < M; i++){
+            for (int j = 0; j < N / 2; j++){
+                if (cells[i * N + j] != cells[i * N + N - 1 - j]){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Plays the current player's token in a non-full column.
+     *
+     * @param col
+     * @return True if the move wins the game
+     */
+    public boolean play(int col) {
+        int row = freeRow[col];
+        boolean win = isWinningCell(row, col, currentPlayer);
+
+        int bit = row * N + col;
+        cells[bit] = currentPlayer;
+        bitboards[currentPlayer][bit >>> 6] |= 1L << bit;
+        if (liveWindows != null){
+            liveWindows.add(bit, currentPlayer);
+        }
+        freeRow[col] = row - 1;
+        moves[moveCount++] = col;
+        if (zobristTable != null){
+            hash ^= zobristTable[row][col][2] ^ zobristTable[row][col][currentPlayer];
+            mirrorHash ^= zobristTable[row][N - 1 - col][2] ^ zobristTable[row][N - 1 - col][currentPlayer];
+        }
+        currentPlayer = 1 - currentPlayer;
+
+        return win;
+    }
+
+    /**
+     * Places a token of the given player in a non-full column regardless of the
+     * turn, as when setting up a position. The player to move is then given by
+     * the parity of the number of tokens.
+     *
+     * @param col
+     * @param player
+     */
+    public void drop(int col, int player) {
+        currentPlayer = player;
+        play(col);
+        currentPlayer = moveCount & 1;
+    }
+
+    /**
+     * Undoes the last move
+     */
+    public void undo() {
+        int col = moves[--moveCount];
+        int row = ++freeRow[col];
+        currentPlayer = 1 - currentPlayer;
+
+        int bit = row * N + col;
+        cells[bit] = FREE;
+        bitboards[currentPlayer][bit >>> 6] &= ~(1L << bit);
+        if (liveWindows != null){
+            liveWindows.remove(bit, currentPlayer);
+        }
+        if (zobristTable != null){
+            hash ^= zobristTable[row][col][2] ^ zobristTable[row][col][currentPlayer];
+            mirrorHash ^= zobristTable[row][N - 1 - col][2] ^ zobristTable[row][N - 1 - col][currentPlayer];
+        }
+    }
+
+    /**
+     * Checks whether a token of the given player in the given cell would complete
+     * a line of X tokens. The cell itself is not read, so it can be free.
+     *
+     * @param row
+     * @param col
+     * @param player
+     * @return True if the cell is winning for the player
+     */
+    public boolean isWinningCell(int row, int col, int player) {
+        if (winCheck != null){
+            return winCheck.isWinningCell(bitboards[player][0], row * N + col);
+        }
+        return lineLength(row, col, player, 0, 1) >= X
+            || lineLength(row, col, player, 1, 0) >= X
+            || lineLength(row, col, player, 1, 1) >= X
+            || lineLength(row, col, player, 1, -1) >= X;
+    }
+
+    /**
+     * Checks whether the player could win right now by playing in the given column.
+     *
+     * @param col
+     * @param player
+     * @return True if the column is not full and its free cell is winning for the player
+     */
+    public boolean isWinningColumn(int col, int player) {
+        return freeRow[col] >= 0 && isWinningCell(freeRow[col], col, player);
+    }
+
+    /**
+     * @param player
+     * @return The first column in which the player could win right now, or -1 if there is none
+     */
+    public int winningColumn(int player) {
+        for (int j = 0; j < N; j++){
+            if (isWinningColumn(j, player)){
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param player
+     * @return The number of columns in which the player could win right now
+     */
+    public int winningColumns(int player) {
+        int count = 0;
+        for (int j = 0; j < N; j++){
+            if (isWinningColumn(j, player)){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Length of the line through (row, col) in direction (dRow, dCol), counting the cell itself
+    private int lineLength(int row, int col, int player, int dRow, int dCol) {
+        int n = 1;
+        for (int i = row + dRow, j = col + dCol; i >= 0 && i < M && j >= 0 && j < N && cells[i * N + j] == player; i += dRow, j += dCol){
+            n++;
+        }
+        for (int i = row - dRow, j = col - dCol; i >= 0 && i < M && j >= 0 && j < N && cells[i * N + j] == player; i -= dRow, j -= dCol){
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,242 @@
+package connectx.SouthPasadena;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tables of a board geometry shared by all the games played on it.
+ * <p>
+ * The Zobrist keys, the static column order, the windows of the board, the
+ * opening book, the learned move ordering and the endgame tablebase only depend
+ * on M, N and X, so they are built once per JVM and never modified: any number
+ * of players, on any number of threads, can read them at the same time. The
+ * book, the move ordering and the tablebase are looked for when the geometry is
+ * first used, in the directories given by SouthPasadena.BOOK_DIR_PROPERTY,
+ * SouthPasadena.ORDERING_DIR_PROPERTY and SouthPasadena.TABLEBASE_DIR_PROPERTY.
+ * </p>
+ * <p>
+ * The windows are kept as templates of LiveWindows and WindowEvaluator, which
+ * are never used themselves: every player gets copies sharing their tables,
+ * with a state of its own.
+ * </p>
+ * <p>
+ * On small boards, the evaluation and the win check specialised for the
+ * geometry by KernelGenerator are compiled by a background thread, so that the
+ * first game does not wait for the compiler: players start with the generic
+ * code and switch to the specialised one once it is ready.
+ * </p>
+ */
+public class Geometry {
+
+    private static final ConcurrentHashMap<Long, Geometry> GEOMETRIES = new ConcurrentHashMap<>();
+
+    public final int M;
+    public final int N;
+    public final int X;
+
+    private final long[][][] zobristTable;
+    private final long sideKey;
+    private final int[] columnOrder;
+
+    private final LiveWindows liveWindows;
+    private final WindowEvaluator windowEvaluator;
+
+    // null if there is no book, move ordering or tablebase for the geometry
+    private final OpeningBook openingBook;
+    private final MoveOrdering moveOrdering;
+    private final Tablebase tablebase;
+
+    // Code generated for the geometry, implementing WindowKernel and WinCheck (null until it is compiled, or if there is none)
+    private volatile Object specialised;
+
+    private Geometry(int M, int N, int X) {
+        this.M = M;
+        this.N = N;
+        this.X = X;
+
+        // The Zobrist keys only depend on the geometry, so that hashes are stable across games
+        // and can be used to index the opening book
+        Random rand = new Random(seed(M, N, X));
+        zobristTable = new long[M][N][3];
+        for (int i = 0; i < M; i++){
+            for (int j = 0; j < N; j++){
+                for (int k = 0; k < 3; k++){
+                    zobristTable[i][j][k] = rand.nextLong();
+                }
+            }
+        }
+        sideKey = rand.nextLong();
+        columnOrder = SouthPasadena.columnOrder(N);
+
+        liveWindows = new LiveWindows(M, N, X);
+        windowEvaluator = new WindowEvaluator(M, N, X, SouthPasadena.MULTIPLIER_1, SouthPasadena.MULTIPLIER_2, SouthPasadena.MULTIPLIER_3, null);
+
+        openingBook = loadOpeningBook(M, N, X);
+        moveOrdering = loadMoveOrdering(M, N, X);
+        tablebase = loadTablebase(M, N, X);
+
+        if (SouthPasadena.CODEGEN && KernelGenerator.supports(M, N, X)){
+            Thread compiler = new Thread(this::generateSpecialised, "SouthPasadena codegen " + M + "x" + N + "x" + X);
+            compiler.setDaemon(true);
+            compiler.start();
+        }
+    }
+
+    // Compiles the specialised code; the generic code is kept if it fails
+    private void generateSpecialised() {
+        try {
+            specialised = KernelGenerator.generate(M, N, X, SouthPasadena.MULTIPLIER_2, SouthPasadena.MULTIPLIER_3);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.err.println("SouthPasadena: specialised code ignored (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * @param M
+     * @param N
+     * @param X
+     * @return The tables of the geometry, built on the first call
+     */
+    public static Geometry of(int M, int N, int X) {
+        return GEOMETRIES.computeIfAbsent(seed(M, N, X), key -> new Geometry(M, N, X));
+    }
+
+    // Seed of the Zobrist keys, unique for each geometry
+    private static long seed(int M, int N, int X) {
+        return ((long) M << 42) ^ ((long) N << 21) ^ X;
+    }
+
+    /**
+     * @return The Zobrist keys, indexed by row, column and cell state (0, 1 or 2 if free)
+     */
+    public long[][][] zobristTable() {
+        return zobristTable;
+    }
+
+    /**
+     * Key xored into the hashes of the transposition table, so that the searches of both
+     * players can share a table although their scores are from their own point of view.
+     *
+     * @param player
+     * @return 0 for the first player, a random key for the second one
+     */
+    public long sideKey(int player) {
+        return player == 0 ? 0L : sideKey;
+    }
+
+    /**
+     * @return The static column order, from the centre out (not to be modified)
+     */
+    public int[] columnOrder() {
+        return columnOrder;
+    }
+
+    /**
+     * @return A new tracker of the live windows, sharing the windows of the geometry
+     */
+    public LiveWindows newLiveWindows() {
+        return new LiveWindows(liveWindows);
+    }
+
+    /**
+     * @return A new window evaluator, sharing the windows of the geometry
+     */
+    public WindowEvaluator newWindowEvaluator() {
+        return new WindowEvaluator(windowEvaluator);
+    }
+
+    /**
+     * @return The window kernel specialised for the geometry, or null if it is not compiled (yet)
+     */
+    public WindowKernel specialisedKernel() {
+        return (WindowKernel) specialised;
+    }
+
+    /**
+     * @return The win check specialised for the geometry, or null if it is not compiled (yet)
+     */
+    public WinCheck specialisedWinCheck() {
+        return (WinCheck) specialised;
+    }
+
+    /**
+     * @return The opening book, or null
+     */
+    public OpeningBook openingBook() {
+        return openingBook;
+    }
+
+    /**
+     * @return The learned move ordering, or null
+     */
+    public MoveOrdering moveOrdering() {
+        return moveOrdering;
+    }
+
+    /**
+     * @return The endgame tablebase, or null
+     */
+    public Tablebase tablebase() {
+        return tablebase;
+    }
+
+    /**
+     * Memory-maps the opening book for the geometry, if there is one.
+     *
+     * @param M
+     * @param N
+     * @param X
+     * @return The opening book, or null
+     */
+    private static OpeningBook loadOpeningBook(int M, int N, int X) {
+
+        Path file = Paths.get(System.getProperty(SouthPasadena.BOOK_DIR_PROPERTY, "."), OpeningBook.fileName(M, N, X));
+        try {
+            return OpeningBook.open(file, M, N, X);
+        } catch (IOException e) {
+            System.err.println("SouthPasadena: opening book ignored (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    /**
+     * Reads the learned move ordering for the geometry, if there is one.
+     *
+     * @param M
+     * @param N
+     * @param X
+     * @return The move ordering, or null
+     */
+    private static MoveOrdering loadMoveOrdering(int M, int N, int X) {
+
+        Path file = Paths.get(System.getProperty(SouthPasadena.ORDERING_DIR_PROPERTY, "."), MoveOrdering.fileName(M, N, X));
+        try {
+            return MoveOrdering.open(file, M, N, X);
+        } catch (IOException e) {
+            System.err.println("SouthPasadena: move ordering ignored (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    /**
+     * Memory-maps the endgame tablebase for the geometry, if there is one.
+     *
+     * @param M
+     * @param N
+     * @param X
+     * @return The tablebase, or null
+     */
+    private static Tablebase loadTablebase(int M, int N, int X) {
+
+        Path file = Paths.get(System.getProperty(SouthPasadena.TABLEBASE_DIR_PROPERTY, "."), Tablebase.fileName(M, N, X));
+        try {
+            return Tablebase.open(file, M, N, X);
+        } catch (IOException e) {
+            System.err.println("SouthPasadena: tablebase ignored (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package connectx.SouthPasadena;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+/**
+ * Generator of the evaluation and win check code specialised for one geometry.
+ * <p>
+ * On boards of at most 64 cells every bitboard is a single long, so the
+ * windows of the board can be written out as constant masks. The generated
+ * class scores every row and diagonal window with its own constant mask and
+ * weight (a WindowKernel), and checks wins with one method per cell testing
+ * the masks of the lines through the cell (a WinCheck), with no loop and no
+ * bound checks. Windows holding tokens of both players score 0 anyway, so the
+ * kernel does not need to follow the windows WindowEvaluator drops.
+ * </p>
+ * <p>
+ * The source is compiled in memory with the system Java compiler and defined
+ * as a hidden class. Larger boards, and runtimes without a compiler (a JRE),
+ * keep the generic code.
+ * </p>
+ */
+public class KernelGenerator {
+
+    // Largest number of row and diagonal windows, so that the score method stays small enough to be compiled by the JIT
+    public static final int MAX_WINDOWS = 160;
+
+    private KernelGenerator() {
+    }
+
+    /**
+     * @param M
+     * @param N
+     * @param X
+     * @return True if code can be generated for the geometry
+     */
+    public static boolean supports(int M, int N, int X) {
+        return M * N <= 64 && X >= 2 && WindowEvaluator.windowCount(M, N, X) <= MAX_WINDOWS;
+    }
+
+    /**
+     * Generates, compiles and loads the code of a geometry.
+     *
+     * @param M
+     * @param N
+     * @param X
+     * @param rowWeight - Weight of the row windows
+     * @param diagonalWeight - Weight of the diagonal windows
+     * @return An instance of the generated class, implementing WindowKernel and WinCheck
+     * @throws ReflectiveOperationException If the code cannot be compiled or loaded
+     */
+    public static Object generate(int M, int N, int X, int rowWeight, int diagonalWeight) throws ReflectiveOperationException {
+
+        if (!supports(M, N, X)){
+            throw new IllegalArgumentException("No specialised code for " + M + "x" + N + "x" + X);
+        }
+        String simpleName = "Specialised" + M + "x" + N + "x" + X;
+        byte[] bytes = compile(KernelGenerator.class.getPackageName() + "." + simpleName,
+                               source(simpleName, M, N, X, rowWeight, diagonalWeight));
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (ReflectiveOperationException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ReflectiveOperationException(e);
+        }
+    }
+
+    /**
+     * @param simpleName - Name of the class
+     * @param M
+     * @param N
+     * @param X
+     * @param rowWeight
+     * @param diagonalWeight
+     * @return The Java source of the specialised class
+     */
+    static String source(String simpleName, int M, int N, int X, int rowWeight, int diagonalWeight) {
+
+        StringBuilder s = new StringBuilder();
+        s.append("package ").append(KernelGenerator.class.getPackageName()).append(";\n\n");
+        s.append("final class ").append(simpleName).append(" implements WindowKernel, WinCheck {\n\n");
+
+        // Kernel: every row and diagonal window, with the order and weights of WindowEvaluator
+        s.append("    public void setWindows(int count, int[][] words, long[][] masks, int[] weights) {\n    }\n\n");
+        s.append("    public int score(long[] mine, long[] yours) {\n");
+        s.append("        long m = mine[0];\n        long y = yours[0];\n        int a, b;\n        int s = 0;\n");
+        List<Long> rows = windows(M, N, X, 0, 1);
+        List<Long> diagonals = windows(M, N, X, 1, 1);
+        diagonals.addAll(windows(M, N, X, 1, -1));
+        appendScores(s, rows, rowWeight);
+        appendScores(s, diagonals, diagonalWeight);
+        s.append("        return s;\n    }\n\n");
+
+        // Win check: one method per cell, testing the lines of X cells through it
+        List<Long> lines = new ArrayList<>(rows);
+        lines.addAll(windows(M, N, X, 1, 0));
+        lines.addAll(diagonals);
+        s.append("    public boolean isWinningCell(long tokens, int bit) {\n        switch (bit) {\n");
+        for (int bit = 0; bit < M * N; bit++){
+            s.append("            case ").append(bit).append(": return c").append(bit).append("(tokens | ").append(hex(1L << bit)).append(");\n");
+        }
+        s.append("            default: return false;\n        }\n    }\n");
+        for (int bit = 0; bit < M * N; bit++){
+            s.append("\n    private static boolean c").append(bit).append("(long t) {\n        return false");
+            for (long mask : lines){
+                if ((mask & (1L << bit)) != 0){
+                    s.append("\n            || (t & ").append(hex(mask)).append(") == ").append(hex(mask));
+                }
+            }
+            s.append(";\n    }\n");
+        }
+
+        s.append("}\n");
+        return s.toString();
+    }
+
+    // Masks of the windows starting anywhere in direction (dRow, dCol), in the order of WindowEvaluator
+    private static List<Long> windows(int M, int N, int X, int dRow, int dCol) {
+        List<Long> masks = new ArrayList<>();
+        for (int i = 0; i < M; i++){
+            for (int j = 0; j < N; j++){
+                int lastRow = i + (X - 1) * dRow;
+                int lastCol = j + (X - 1) * dCol;
+                if (lastRow >= M || lastCol < 0 || lastCol >= N){
+                    continue;
+                }
+                long mask = 0L;
+                for (int k = 0; k < X; k++){
+                    mask |= 1L << ((i + k * dRow) * N + j + k * dCol);
+                }
+                masks.add(mask);
+            }
+        }
+        return masks;
+    }
+
+    // A window holding tokens of a single player scores the square of their number times its weight
+    private static void appendScores(StringBuilder s, List<Long> masks, int weight) {
+        for (long mask : masks){
+            s.append("        a = Long.bitCount(m & ").append(hex(mask)).append(");\n");
+            s.append("        b = Long.bitCount(y & ").append(hex(mask)).append(");\n");
+            s.append("        if (b == 0) s += ").append(weight).append(" * a * a; else if (a == 0) s -= ").append(weight).append(" * b * b;\n");
+        }
+    }
+
+    private static String hex(long value) {
+        return "0x" + Long.toHexString(value) + "L";
+    }
+
+    // Compiles a single class in memory, against the class path of the running program
+    private static byte[] compile(String className, String source) throws ReflectiveOperationException {
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null){
+            throw new ClassNotFoundException("No Java compiler in this runtime");
+        }
+
+        JavaFileObject input = new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JavaFileManager files = new ForwardingJavaFileManager<JavaFileManager>(compiler.getStandardFileManager(null, null, null)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String name, JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("bytes:///" + name.replace('.', '/') + ".class"), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return output;
+                    }
+                };
+            }
+        };
+
+        StringWriter errors = new StringWriter();
+        List<String> options = List.of("-classpath", System.getProperty("java.class.path"), "-g:none");
+        if (!compiler.getTask(errors, files, null, options, null, List.of(input)).call()){
+            throw new ClassNotFoundException("Specialised code does not compile: " + errors);
+        }
+        return output.toByteArray();
+    }
+}
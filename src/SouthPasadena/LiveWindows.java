@@ -0,0 +1,154 @@
+package connectx.SouthPasadena;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracker of the windows each player can still complete.
+ * <p>
+ * A window is a run of X cells in a row, a column or a diagonal. It is live
+ * for a player as long as it holds no token of the other player, and a player
+ * with no live window left cannot win anymore: when neither player has one the
+ * game is a draw, long before the board is full.
+ * </p>
+ * <p>
+ * The tokens of each player in each window are counted as tokens are added and
+ * removed, through the windows of each cell, so the number of live windows of
+ * both players is always known. A FastBoard keeps its tracker up to date.
+ * The windows of each cell are never modified, and are shared by the copies
+ * of a tracker.
+ * </p>
+ */
+public class LiveWindows {
+
+    // Windows containing each cell (row-major)
+    private final int[][] cellWindows;
+
+    // Tokens of each player in each window
+    private final int[][] tokens;
+
+    // Windows holding no token of the other player, for each player
+    private final int[] live = new int[2];
+
+    /**
+     * @param M
+     * @param N
+     * @param X
+     */
+    public LiveWindows(int M, int N, int X) {
+
+        List<int[]> windows = new ArrayList<>();
+        addWindows(windows, M, N, X, 0, 1);
+        addWindows(windows, M, N, X, 1, 0);
+        addWindows(windows, M, N, X, 1, 1);
+        addWindows(windows, M, N, X, 1, -1);
+
+        int[] counts = new int[M * N];
+        for (int[] cells : windows){
+            for (int cell : cells){
+                counts[cell]++;
+            }
+        }
+        cellWindows = new int[M * N][];
+        for (int cell = 0; cell < M * N; cell++){
+            cellWindows[cell] = new int[counts[cell]];
+            counts[cell] = 0;
+        }
+        for (int w = 0; w < windows.size(); w++){
+            for (int cell : windows.get(w)){
+                cellWindows[cell][counts[cell]++] = w;
+            }
+        }
+
+        tokens = new int[2][windows.size()];
+        reset();
+    }
+
+    /**
+     * A tracker of the same geometry, empty, sharing the windows of the given one.
+     *
+     * @param other
+     */
+    public LiveWindows(LiveWindows other) {
+        cellWindows = other.cellWindows;
+        tokens = new int[2][other.tokens[0].length];
+        reset();
+    }
+
+    // Adds the cells of the windows starting anywhere in direction (dRow, dCol)
+    private static void addWindows(List<int[]> windows, int M, int N, int X, int dRow, int dCol) {
+        for (int i = 0; i < M; i++){
+            for (int j = 0; j < N; j++){
+                int lastRow = i + (X - 1) * dRow;
+                int lastCol = j + (X - 1) * dCol;
+                if (lastRow >= M || lastCol < 0 || lastCol >= N){
+                    continue;
+                }
+                int[] cells = new int[X];
+                for (int k = 0; k < X; k++){
+                    cells[k] = (i + k * dRow) * N + j + k * dCol;
+                }
+                windows.add(cells);
+            }
+        }
+    }
+
+    /**
+     * Empties the board
+     */
+    public void reset() {
+        for (int w = 0; w < tokens[0].length; w++){
+            tokens[0][w] = 0;
+            tokens[1][w] = 0;
+        }
+        live[0] = tokens[0].length;
+        live[1] = tokens[0].length;
+    }
+
+    /**
+     * @param cell - Cell of the token (row * N + col)
+     * @param player
+     */
+    public void add(int cell, int player) {
+        for (int w : cellWindows[cell]){
+            if (tokens[player][w]++ == 0){
+                live[1 - player]--;
+            }
+        }
+    }
+
+    /**
+     * @param cell - Cell of the token (row * N + col)
+     * @param player
+     */
+    public void remove(int cell, int player) {
+        for (int w : cellWindows[cell]){
+            if (--tokens[player][w] == 0){
+                live[1 - player]++;
+            }
+        }
+    }
+
+    /**
+     * @param player
+     * @return The number of windows the player can still complete
+     */
+    public int live(int player) {
+        return live[player];
+    }
+
+    /**
+     * @param player
+     * @return True if the player has a window left to complete
+     */
+    public boolean canWin(int player) {
+        return live[player] > 0;
+    }
+
+    /**
+     * @return True if neither player can win anymore
+     */
+    public boolean isDead() {
+        return live[0] == 0 && live[1] == 0;
+    }
+}
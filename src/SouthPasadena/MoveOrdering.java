@@ -0,0 +1,147 @@
+package connectx.SouthPasadena;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Learned static move ordering of a single (M,N,X) geometry.
+ * <p>
+ * Each cell of the board has a priority, learned from the rate of cutoffs of
+ * the moves played in it in self-play searches (see MoveOrderingGenerator).
+ * At a node, the columns are ordered by the priority of their free cell, so
+ * the order follows the height profile of the board, and SouthPasadena uses it
+ * instead of the centre-first order, after the moves of the transposition
+ * table. The file is tiny, so it is read on the heap:
+ * <pre>
+ *  header : int MAGIC, int VERSION, int M, int N, int X
+ *  cells  : M*N int priorities, row-major with row 0 at the top
+ * </pre>
+ * </p>
+ */
+public class MoveOrdering {
+
+    public static final int MAGIC = 0x43584D4F; // "CXMO"
+    public static final int VERSION = 1;
+
+    public static final int HEADER_BYTES = 5 * Integer.BYTES;
+
+    private final int N;
+
+    // Priority of each cell (bit row*N+col)
+    private final int[] priorities;
+
+    private MoveOrdering(int N, int[] priorities) {
+        this.N = N;
+        this.priorities = priorities;
+    }
+
+    /**
+     * Default file name of the move ordering for the given geometry.
+     *
+     * @param M
+     * @param N
+     * @param X
+     * @return The file name, e.g. SouthPasadena-6-7-4.order
+     */
+    public static String fileName(int M, int N, int X) {
+        return "SouthPasadena-" + M + "-" + N + "-" + X + ".order";
+    }
+
+    /**
+     * Reads the move ordering stored in the given file.
+     *
+     * @param file
+     * @param M
+     * @param N
+     * @param X
+     * @return The move ordering, or null if the file does not exist or was built for another geometry
+     * @throws IOException If the file cannot be read or is malformed
+     */
+    public static MoveOrdering open(Path file, int M, int N, int X) throws IOException {
+
+        if (!Files.isRegularFile(file)){
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION){
+                throw new IOException("Not a move ordering, or an old version: " + file);
+            }
+            if (in.readInt() != M || in.readInt() != N || in.readInt() != X){
+                return null;
+            }
+            if (Files.size(file) != HEADER_BYTES + (long) M * N * Integer.BYTES){
+                throw new IOException("Corrupted move ordering: " + file);
+            }
+
+            int[] priorities = new int[M * N];
+            for (int bit = 0; bit < priorities.length; bit++){
+                priorities[bit] = in.readInt();
+            }
+            return new MoveOrdering(N, priorities);
+        }
+    }
+
+    /**
+     * Orders the columns of a position by the priority of their free cell, columns of the
+     * same priority (and full ones, last) in the given order.
+     *
+     * @param b - The position
+     * @param staticOrder - Order of the columns to start from
+     * @param columns - Array the N columns are written to, in order
+     */
+    public void order(FastBoard b, int[] staticOrder, int[] columns) {
+
+        // Insertion sort, stable and allocation-free, on a handful of columns
+        for (int i = 0; i < N; i++){
+            int column = staticOrder[i];
+            int priority = priority(b, column);
+            int j = i;
+            while (j > 0 && priority(b, columns[j - 1]) < priority){
+                columns[j] = columns[j - 1];
+                j--;
+            }
+            columns[j] = column;
+        }
+    }
+
+    private int priority(FastBoard b, int column) {
+        int row = b.freeRow(column);
+        return row >= 0 ? priorities[row * N + column] : Integer.MIN_VALUE;
+    }
+
+    /**
+     * Writes a move ordering file.
+     *
+     * @param file
+     * @param M
+     * @param N
+     * @param X
+     * @param priorities - Priority of each cell, row-major with row 0 at the top
+     * @throws IOException
+     */
+    public static void write(Path file, int M, int N, int X, int[] priorities) throws IOException {
+
+        if (priorities.length != M * N){
+            throw new IllegalArgumentException("One priority per cell expected");
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(M);
+            out.writeInt(N);
+            out.writeInt(X);
+
+            for (int priority : priorities){
+                out.writeInt(priority);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package connectx.SouthPasadena;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import connectx.CXBoard;
+import connectx.CXGameState;
+
+/**
+ * Offline generator of SouthPasadena's learned move orderings.
+ * <p>
+ * Self-play games are played with fixed depth searches, from a few random
+ * moves and with a random move now and then so that the games differ. Every
+ * cutoff of the searches is counted by cell of the move which produced it,
+ * and so is every move searched, a cell and its mirror image together. The
+ * priority of a cell is its rate of cutoffs per move searched, or the rate of
+ * its column if it was hardly ever searched.
+ * </p>
+ * <p>
+ * The order is then measured on positions of other games, searched to the
+ * same depth with the static and the learned order: the number of nodes, the
+ * time and the fraction of the cutoffs produced by the first move searched are
+ * printed.
+ * </p>
+ * <p>
+ * Usage: MoveOrderingGenerator M N X games depth [output file]
+ * </p>
+ */
+public class MoveOrderingGenerator {
+
+    private static final int OPENING_MOVES = 2;
+
+    // Chance of a random move in the self-play games
+    private static final double RANDOM_MOVES = 0.25;
+
+    private static final int TIMEOUT = 10;
+
+    // Number of moves searched in a cell from which its cutoff rate is trusted
+    private static final int MIN_MOVES = 1000;
+
+    // Priority of a cell with a cutoff rate of 1
+    private static final int PRIORITY_SCALE = 1_000_000;
+
+    private MoveOrderingGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 5){
+            System.err.println("Usage: MoveOrderingGenerator <M> <N> <X> <games> <depth> [output file]");
+            System.exit(1);
+        }
+
+        int M = Integer.parseInt(args[0]);
+        int N = Integer.parseInt(args[1]);
+        int X = Integer.parseInt(args[2]);
+        int games = Integer.parseInt(args[3]);
+        int depth = Integer.parseInt(args[4]);
+        Path output = Paths.get(args.length > 5 ? args[5] : MoveOrdering.fileName(M, N, X));
+
+        CutoffStats stats = new CutoffStats(M, N);
+        SouthPasadena[] players = newPlayers(M, N, X, null);
+        for (SouthPasadena player : players){
+            player.collectCutoffs(stats);
+        }
+        Random random = new Random(1);
+        for (int game = 0; game < games; game++){
+            playGame(M, N, X, players, depth, random, null);
+        }
+        System.out.println(stats.cutoffs + " cutoffs in " + games + " games");
+
+        int[] priorities = learnPriorities(M, N, stats);
+        MoveOrdering.write(output, M, N, X, priorities);
+        MoveOrdering ordering = MoveOrdering.open(output, M, N, X);
+        System.out.println("Move ordering written to " + output + ", cutoff rates by cell (%):");
+        for (int i = 0; i < M; i++){
+            StringBuilder row = new StringBuilder();
+            for (int j = 0; j < N; j++){
+                row.append(String.format("%4d", priorities[i * N + j] / (PRIORITY_SCALE / 100)));
+            }
+            System.out.println(row);
+        }
+
+        // Positions of other games, searched with either order
+        List<CXBoard> positions = new ArrayList<>();
+        random = new Random(2);
+        for (int game = 0; game < Math.max(2, games / 4); game++){
+            playGame(M, N, X, newPlayers(M, N, X, null), depth, random, positions);
+        }
+        measure(M, N, X, positions, depth, "static order", null);
+        measure(M, N, X, positions, depth, "learned order", ordering);
+    }
+
+    // Players of both sides, using the given order (or the static one)
+    private static SouthPasadena[] newPlayers(int M, int N, int X, MoveOrdering ordering) {
+        SouthPasadena[] players = new SouthPasadena[2];
+        for (int p = 0; p < 2; p++){
+            players[p] = new SouthPasadena();
+            players[p].initPlayer(M, N, X, p == 0, TIMEOUT);
+            players[p].disableOpeningBook();
+            players[p].useMoveOrdering(ordering);
+        }
+        return players;
+    }
+
+    // Plays a self-play game, adding its positions to the list if there is one
+    private static void playGame(int M, int N, int X, SouthPasadena[] players, int depth, Random random, List<CXBoard> positions) {
+
+        CXBoard B = new CXBoard(M, N, X);
+        while (B.gameState() == CXGameState.OPEN){
+            Integer[] columns = B.getAvailableColumns();
+            int column = -1;
+            if (B.numOfMarkedCells() >= OPENING_MOVES && random.nextDouble() >= RANDOM_MOVES){
+                SouthPasadena player = players[B.currentPlayer()];
+                player.loadPosition(B);
+                player.search(depth);
+                column = player.searchedColumn();
+                if (positions != null){
+                    positions.add(B.copy());
+                }
+            }
+            if (column < 0 || B.fullColumn(column)){
+                column = columns[random.nextInt(columns.length)];
+            }
+            B.markColumn(column);
+        }
+    }
+
+    // Cutoff rate of each cell, counting a cell and its mirror image together
+    private static int[] learnPriorities(int M, int N, CutoffStats stats) {
+
+        int[] priorities = new int[M * N];
+        for (int j = 0; j < N; j++){
+            long columnCutoffs = 0;
+            long columnMoves = 0;
+            for (int i = 0; i < M; i++){
+                columnCutoffs += stats.cellCutoffs[i * N + j] + stats.cellCutoffs[i * N + N - 1 - j];
+                columnMoves += stats.cellMoves[i * N + j] + stats.cellMoves[i * N + N - 1 - j];
+            }
+            int columnPriority = columnMoves >= MIN_MOVES ? (int) (PRIORITY_SCALE * columnCutoffs / columnMoves) : 0;
+
+            for (int i = 0; i < M; i++){
+                long cutoffs = stats.cellCutoffs[i * N + j] + stats.cellCutoffs[i * N + N - 1 - j];
+                long moves = stats.cellMoves[i * N + j] + stats.cellMoves[i * N + N - 1 - j];
+                priorities[i * N + j] = moves >= MIN_MOVES ? (int) (PRIORITY_SCALE * cutoffs / moves) : columnPriority;
+            }
+        }
+        return priorities;
+    }
+
+    // Searches the positions with the given order, and prints the nodes and the first move cutoff rate
+    private static void measure(int M, int N, int X, List<CXBoard> positions, int depth, String name, MoveOrdering ordering) {
+
+        CutoffStats stats = new CutoffStats(M, N);
+        SouthPasadena[] players = newPlayers(M, N, X, ordering);
+        long nodes = 0;
+        long start = System.currentTimeMillis();
+        for (CXBoard B : positions){
+            SouthPasadena player = players[B.currentPlayer()];
+            player.collectCutoffs(stats);
+            long before = player.nodeCount();
+            player.loadPosition(B);
+            player.search(depth);
+            nodes += player.nodeCount() - before;
+        }
+        System.out.println(String.format("%s: %d positions, %d nodes in %d ms, first move cutoff rate %.1f%%",
+                                         name, positions.size(), nodes, System.currentTimeMillis() - start, 100.0 * stats.firstMoveRate()));
+    }
+}
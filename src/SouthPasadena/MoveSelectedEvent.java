@@ -0,0 +1,45 @@
+package connectx.SouthPasadena;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event of a move of SouthPasadena, lasting as long as
+ * selectColumn. Without a recording it costs a short-lived object per move,
+ * once JFR has been set up when SouthPasadena is loaded.
+ */
+@Name("connectx.MoveSelected")
+@Label("Move Selected")
+@Category({"Connect X", "SouthPasadena"})
+@Description("A column selected by SouthPasadena")
+@StackTrace(false)
+class MoveSelectedEvent extends Event {
+
+    @Label("Column")
+    int column;
+
+    @Label("Move")
+    @Description("Number of the move in the game, from 1")
+    int move;
+
+    @Label("Source")
+    @Description("Where the move comes from: book, tablebase, solvers or search")
+    String source;
+
+    @Label("Depth")
+    @Description("Depth of the last iteration of the search, 0 if the move was not searched")
+    int depth;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Budget")
+    @Description("Time limit of the move")
+    @Timespan(Timespan.MILLISECONDS)
+    long budget;
+}
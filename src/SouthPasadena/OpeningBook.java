@@ -0,0 +1,188 @@
+package connectx.SouthPasadena;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only opening book for a single (M,N,X) geometry.
+ * <p>
+ * The book is a binary file made of a header followed by fixed-size records
+ * sorted by position hash:
+ * <pre>
+ *  header : int MAGIC, int VERSION, int M, int N, int X, int entries
+ *  record : long hash, int column, int score
+ * </pre>
+ * The file is memory-mapped when the player is initialized, so a lookup is a
+ * binary search over the mapped records and nothing is loaded on the heap.
+ * Scores are stored from the point of view of the player to move.
+ * Positions are keyed by their canonical hash (see FastBoard), so a position
+ * and its mirror image share one record, and the column is stored in the
+ * canonical orientation of the position.
+ */
+public class OpeningBook {
+
+    public static final int MAGIC = 0x43584F42; // "CXOB"
+    public static final int VERSION = 2;  // 2: canonical keys
+
+    public static final int HEADER_BYTES = 6 * Integer.BYTES;
+    public static final int RECORD_BYTES = Long.BYTES + 2 * Integer.BYTES;
+
+    private final MappedByteBuffer buffer;
+    private final int entries;
+
+    private OpeningBook(MappedByteBuffer buffer, int entries) {
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    /**
+     * Default file name of the book for the given geometry.
+     *
+     * @param M
+     * @param N
+     * @param X
+     * @return The file name, e.g. SouthPasadena-6-7-4.book
+     */
+    public static String fileName(int M, int N, int X) {
+        return "SouthPasadena-" + M + "-" + N + "-" + X + ".book";
+    }
+
+    /**
+     * Memory-maps the book stored in the given file.
+     *
+     * @param file
+     * @param M
+     * @param N
+     * @param X
+     * @return The opening book, or null if the file does not exist or was built for another geometry
+     * @throws IOException If the file cannot be read or is malformed
+     */
+    public static OpeningBook open(Path file, int M, int N, int X) throws IOException {
+
+        if (!Files.isRegularFile(file)){
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            if (channel.size() < HEADER_BYTES){
+                throw new IOException("Truncated opening book: " + file);
+            }
+
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+                throw new IOException("Not an opening book, or an old version: " + file);
+            }
+            if (buffer.getInt(8) != M || buffer.getInt(12) != N || buffer.getInt(16) != X){
+                return null;
+            }
+
+            int entries = buffer.getInt(20);
+            if (channel.size() != HEADER_BYTES + (long) entries * RECORD_BYTES){
+                throw new IOException("Corrupted opening book: " + file);
+            }
+
+            return new OpeningBook(buffer, entries);
+        }
+    }
+
+    /**
+     * @return The number of positions in the book
+     */
+    public int size() {
+        return entries;
+    }
+
+    /**
+     * Binary search of a position in the book.
+     *
+     * @param hash - Canonical Zobrist hash of the position
+     * @return The index of the position's record, or -1 if the position is not in the book
+     */
+    public int find(long hash) {
+
+        int low = 0;
+        int high = entries - 1;
+
+        while (low <= high){
+            int mid = (low + high) >>> 1;
+            long key = buffer.getLong(offset(mid));
+
+            if (key < hash){
+                low = mid + 1;
+            }
+            else if (key > hash){
+                high = mid - 1;
+            }
+            else{
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param index - A value returned by find
+     * @return The best column stored for the position
+     */
+    public int column(int index) {
+        return buffer.getInt(offset(index) + Long.BYTES);
+    }
+
+    /**
+     * @param index - A value returned by find
+     * @return The score stored for the position, from the point of view of the player to move
+     */
+    public int score(int index) {
+        return buffer.getInt(offset(index) + Long.BYTES + Integer.BYTES);
+    }
+
+    private static int offset(int index) {
+        return HEADER_BYTES + index * RECORD_BYTES;
+    }
+
+    /**
+     * Writes a book file.
+     *
+     * @param file
+     * @param M
+     * @param N
+     * @param X
+     * @param hashes - Position hashes, sorted in ascending order and without duplicates
+     * @param columns - Best column of each position
+     * @param scores - Score of each position
+     * @throws IOException
+     */
+    public static void write(Path file, int M, int N, int X, long[] hashes, int[] columns, int[] scores) throws IOException {
+
+        for (int i = 1; i < hashes.length; i++){
+            if (hashes[i-1] >= hashes[i]){
+                throw new IllegalArgumentException("Book hashes must be sorted and unique");
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(M);
+            out.writeInt(N);
+            out.writeInt(X);
+            out.writeInt(hashes.length);
+
+            for (int i = 0; i < hashes.length; i++){
+                out.writeLong(hashes[i]);
+                out.writeInt(columns[i]);
+                out.writeInt(scores[i]);
+            }
+        }
+    }
+}
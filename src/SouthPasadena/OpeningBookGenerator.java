@@ -0,0 +1,139 @@
+package connectx.SouthPasadena;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import connectx.CXBoard;
+import connectx.CXGameState;
+
+/**
+ * Offline generator of SouthPasadena's opening books.
+ * <p>
+ * Every position reachable within the given number of plies is searched by an
+ * independent SouthPasadena instance with the given time budget, using all the
+ * available cores. The results are written to a sorted book file that
+ * SouthPasadena memory-maps at initialization. Mirror images are searched
+ * only once, since they share the same canonical record.
+ * </p>
+ * <p>
+ * Usage: OpeningBookGenerator M N X plies seconds [output file]
+ * </p>
+ */
+public class OpeningBookGenerator {
+
+    private OpeningBookGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 5){
+            System.err.println("Usage: OpeningBookGenerator <M> <N> <X> <plies> <seconds per position> [output file]");
+            System.exit(1);
+        }
+
+        int M = Integer.parseInt(args[0]);
+        int N = Integer.parseInt(args[1]);
+        int X = Integer.parseInt(args[2]);
+        int plies = Integer.parseInt(args[3]);
+        int seconds = Integer.parseInt(args[4]);
+        Path output = Paths.get(args.length > 5 ? args[5] : OpeningBook.fileName(M, N, X));
+
+        List<CXBoard> positions = enumeratePositions(M, N, X, plies);
+        System.out.println(positions.size() + " positions to search, " + seconds + "s each");
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        List<Future<long[]>> results = new ArrayList<>();
+        for (CXBoard position : positions){
+            results.add(executor.submit(() -> searchPosition(position, seconds)));
+        }
+
+        long[][] entries = new long[results.size()][];
+        for (int i = 0; i < entries.length; i++){
+            entries[i] = results.get(i).get();
+        }
+        executor.shutdown();
+
+        // Sorting the records by hash
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+
+        long[] hashes = new long[entries.length];
+        int[] columns = new int[entries.length];
+        int[] scores = new int[entries.length];
+        for (int i = 0; i < entries.length; i++){
+            hashes[i] = entries[i][0];
+            columns[i] = (int) entries[i][1];
+            scores[i] = (int) entries[i][2];
+        }
+
+        OpeningBook.write(output, M, N, X, hashes, columns, scores);
+        System.out.println("Opening book written to " + output);
+    }
+
+    /**
+     * Collects all the distinct non-terminal positions reachable within the given number of plies.
+     *
+     * @param M
+     * @param N
+     * @param X
+     * @param plies
+     * @return List of positions
+     */
+    private static List<CXBoard> enumeratePositions(int M, int N, int X, int plies){
+
+        SouthPasadena hasher = new SouthPasadena();
+        hasher.initPlayer(M, N, X, true, 1);
+
+        HashSet<Long> seen = new HashSet<>();
+        List<CXBoard> positions = new ArrayList<>();
+        List<CXBoard> frontier = new ArrayList<>();
+        frontier.add(new CXBoard(M, N, X));
+
+        for (int ply = 0; ply <= plies; ply++){
+            List<CXBoard> next = new ArrayList<>();
+            for (CXBoard B : frontier){
+                if (B.gameState() != CXGameState.OPEN || !seen.add(hasher.hashedBoard(B).canonicalHash())){
+                    continue;
+                }
+                positions.add(B);
+
+                if (ply < plies){
+                    for (Integer column : B.getAvailableColumns()){
+                        CXBoard child = B.copy();
+                        child.markColumn(column);
+                        next.add(child);
+                    }
+                }
+            }
+            frontier = next;
+        }
+
+        return positions;
+    }
+
+    /**
+     * Searches a single position with a fresh SouthPasadena instance playing the side to move.
+     *
+     * @param B
+     * @param seconds
+     * @return The book record {canonical hash, canonical column, score}
+     */
+    private static long[] searchPosition(CXBoard B, int seconds){
+
+        SouthPasadena player = new SouthPasadena();
+        player.initPlayer(B.M, B.N, B.X, B.currentPlayer() == 0, seconds);
+        player.disableOpeningBook();
+
+        int column = player.selectColumn(B);
+        FastBoard board = player.hashedBoard(B);
+        return new long[] {board.canonicalHash(), board.toCanonical(column), player.lastScore()};
+    }
+}
@@ -0,0 +1,48 @@
+package connectx.SouthPasadena;
+
+/**
+ * What a search of SouthPasadena is run for: the player it picks a column for,
+ * whose point of view every score takes, and when it has to be done.
+ * <p>
+ * A context is created for every column to select, so that the deadlines of a
+ * move are never mixed up with those of another one, even when several games
+ * are played at the same time.
+ * </p>
+ */
+public class SearchContext {
+
+    // Fraction of the time after which the search has to return a column
+    public static final double SAFETY_FRACTION = 0.98;
+
+    public final int player;       // Player the column is picked for, 0 or 1
+    public final long start;       // Start of the search, in milliseconds (System.currentTimeMillis)
+    public final long timeLimit;   // Time the player has for the move, in milliseconds
+    public final long deadline;    // Time at which the search stops
+
+    /**
+     * @param player - Player the column is picked for
+     * @param start - Start of the search, in milliseconds
+     * @param timeLimit - Time for the move, in milliseconds
+     */
+    public SearchContext(int player, long start, long timeLimit) {
+        this.player = player;
+        this.start = start;
+        this.timeLimit = timeLimit;
+        this.deadline = deadline(SAFETY_FRACTION);
+    }
+
+    /**
+     * @param fraction - Fraction of the time for the move
+     * @return The time at which that fraction has passed, in milliseconds
+     */
+    public long deadline(double fraction) {
+        return start + (long) (fraction * timeLimit);
+    }
+
+    /**
+     * @return True if the search has to stop
+     */
+    public boolean isTimeRunningOut() {
+        return System.currentTimeMillis() >= deadline;
+    }
+}
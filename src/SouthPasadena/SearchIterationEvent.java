@@ -0,0 +1,36 @@
+package connectx.SouthPasadena;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of an iteration of SouthPasadena's iterative deepening,
+ * lasting as long as the iteration. Without a recording it costs a
+ * short-lived object per iteration, once JFR has been set up when
+ * SouthPasadena is loaded.
+ */
+@Name("connectx.SearchIteration")
+@Label("Search Iteration")
+@Category({"Connect X", "SouthPasadena"})
+@Description("An iteration of iterative deepening")
+@StackTrace(false)
+class SearchIterationEvent extends Event {
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Score")
+    @Description("Best score of the iteration, from SouthPasadena's point of view")
+    int score;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Interrupted")
+    @Description("True if the time ran out before the iteration was completed")
+    boolean interrupted;
+}
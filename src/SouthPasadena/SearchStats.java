@@ -0,0 +1,259 @@
+package connectx.SouthPasadena;
+
+/**
+ * Statistics of SouthPasadena's last move.
+ * <p>
+ * Each player has its own statistics, updated by the thread running its
+ * search with plain increments, so collecting them costs a few additions per
+ * node and nothing is shared between the games of a service. They are reset
+ * at the beginning of every move, and read with the getters or printed with
+ * toString once the move has been selected.
+ * </p>
+ */
+public class SearchStats {
+
+    // Where the move comes from
+    public static final String BOOK = "book";
+    public static final String TABLEBASE = "tablebase";
+    public static final String FIRST_MOVE = "first move";
+    public static final String ONLY_MOVE = "only move";
+    public static final String DEAD_DRAW = "dead draw";
+    public static final String ENDGAME_SOLVER = "endgame solver";
+    public static final String DFPN_SOLVER = "df-pn solver";
+    public static final String SEARCH = "search";
+
+    private String source;
+    private long startNanos;
+    private long elapsedNanos;
+
+    long nodes;
+    long evaluations;
+    long evaluationCacheHits;
+
+    long ttProbes;
+    long ttHits;
+    long ttCollisions;   // Misses on a bucket full of other positions
+    long ttOverwrites;   // Stores dropping an entry of another position
+
+    // Cutoffs by index of the move which produced them among the moves searched (0 for the first one)
+    final long[] cutoffs;
+
+    // Completed and interrupted iterations of iterative deepening
+    private int iterations;
+    private final int[] iterationDepths;
+    private final long[] iterationNodes;
+    private final long[] iterationNanos;
+
+    /**
+     * @param columns - Number of columns of the board
+     * @param maxIterations - Largest number of iterations of a move
+     */
+    public SearchStats(int columns, int maxIterations) {
+        cutoffs = new long[columns];
+        iterationDepths = new int[maxIterations];
+        iterationNodes = new long[maxIterations];
+        iterationNanos = new long[maxIterations];
+    }
+
+    /**
+     * Starts the statistics of a new move, without allocating.
+     */
+    void reset() {
+        source = null;
+        startNanos = System.nanoTime();
+        elapsedNanos = 0;
+        nodes = 0;
+        evaluations = 0;
+        evaluationCacheHits = 0;
+        ttProbes = 0;
+        ttHits = 0;
+        ttCollisions = 0;
+        ttOverwrites = 0;
+        for (int i = 0; i < cutoffs.length; i++){
+            cutoffs[i] = 0;
+        }
+        iterations = 0;
+    }
+
+    /**
+     * Records an iteration of iterative deepening.
+     *
+     * @param depth - Depth of the iteration
+     * @param iterationNodes - Nodes searched by the iteration
+     * @param nanos - Duration of the iteration
+     */
+    void iteration(int depth, long iterationNodes, long nanos) {
+        if (iterations < iterationDepths.length){
+            iterationDepths[iterations] = depth;
+            this.iterationNodes[iterations] = iterationNodes;
+            iterationNanos[iterations] = nanos;
+            iterations++;
+        }
+    }
+
+    /**
+     * @param moveSource - Where the move comes from (BOOK, SEARCH...)
+     */
+    void source(String moveSource) {
+        source = moveSource;
+    }
+
+    /**
+     * Ends the statistics of the move.
+     */
+    void finish() {
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * @return Where the last move comes from, or null if no move has been selected
+     */
+    public String source() {
+        return source;
+    }
+
+    /**
+     * @return The time spent on the last move, in nanoseconds
+     */
+    public long elapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return The nodes of the main search and of the quiescence search
+     */
+    public long nodes() {
+        return nodes;
+    }
+
+    /**
+     * @return The nodes searched per second
+     */
+    public double nodesPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : nodes * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return The depth of the last iteration, 0 if the move was not searched
+     */
+    public int depth() {
+        return iterations == 0 ? 0 : iterationDepths[iterations - 1];
+    }
+
+    /**
+     * @return The number of iterations of iterative deepening, the one interrupted by the time limit included
+     */
+    public int iterations() {
+        return iterations;
+    }
+
+    /**
+     * @param iteration
+     * @return The depth of the iteration
+     */
+    public int iterationDepth(int iteration) {
+        return iterationDepths[iteration];
+    }
+
+    /**
+     * @param iteration
+     * @return The nodes searched by the iteration
+     */
+    public long iterationNodes(int iteration) {
+        return iterationNodes[iteration];
+    }
+
+    /**
+     * @param iteration
+     * @return The duration of the iteration, in nanoseconds
+     */
+    public long iterationNanos(int iteration) {
+        return iterationNanos[iteration];
+    }
+
+    /**
+     * @return The static evaluations, those found in the evaluation cache excluded
+     */
+    public long evaluations() {
+        return evaluations;
+    }
+
+    /**
+     * @return The static evaluations found in the evaluation cache
+     */
+    public long evaluationCacheHits() {
+        return evaluationCacheHits;
+    }
+
+    public long ttProbes() {
+        return ttProbes;
+    }
+
+    public long ttHits() {
+        return ttHits;
+    }
+
+    /**
+     * @return The probes missing their position in a bucket full of other positions
+     */
+    public long ttCollisions() {
+        return ttCollisions;
+    }
+
+    /**
+     * @return The stores dropping the entry of another position
+     */
+    public long ttOverwrites() {
+        return ttOverwrites;
+    }
+
+    /**
+     * @param index - Index of a move among the moves searched at a node (0 for the first one)
+     * @return The cutoffs produced by the move of the given index
+     */
+    public long cutoffs(int index) {
+        return cutoffs[index];
+    }
+
+    /**
+     * @return The fraction of the cutoffs produced by the first move searched
+     */
+    public double firstMoveCutoffRate() {
+        long total = 0;
+        for (long count : cutoffs){
+            total += count;
+        }
+        return total == 0 ? 0.0 : (double) cutoffs[0] / total;
+    }
+
+    /**
+     * @return A report of the last move, on a few lines
+     */
+    @Override
+    public String toString() {
+
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("  %s, %.1f ms", source, elapsedNanos / 1e6));
+        if (iterations == 0){
+            return s.toString();
+        }
+
+        s.append(String.format(", depth %d, %d nodes (%.0f knps)%n", depth(), nodes, nodesPerSecond() / 1e3));
+        s.append("  iterations (depth:nodes/ms):");
+        for (int i = 0; i < iterations; i++){
+            s.append(String.format(" %d:%d/%.1f", iterationDepths[i], iterationNodes[i], iterationNanos[i] / 1e6));
+        }
+        s.append(String.format("%n  tt: %d probes, %.1f%% hits, %d collisions, %d overwrites%n",
+                               ttProbes, ttProbes == 0 ? 0.0 : 100.0 * ttHits / ttProbes, ttCollisions, ttOverwrites));
+        s.append(String.format("  cutoffs: %.1f%% on the first move, by move:", 100.0 * firstMoveCutoffRate()));
+        int last = cutoffs.length - 1;
+        while (last > 0 && cutoffs[last] == 0){
+            last--;
+        }
+        for (int i = 0; i <= last; i++){
+            s.append(' ').append(cutoffs[i]);
+        }
+        s.append(String.format("%n  evaluations: %d, %d more from the cache", evaluations, evaluationCacheHits));
+        return s.toString();
+    }
+}
@@ -0,0 +1,130 @@
+package connectx.SouthPasadena;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import connectx.CXBoard;
+import connectx.CXGameState;
+
+/**
+ * Check that a SouthPasadenaService plays many games at the same time.
+ * <p>
+ * All the games are played at once, each on a thread of its own, by two
+ * players of the same service after a few random moves, and every column they
+ * return is played on the game's CXBoard, which rejects illegal ones. The
+ * check fails (with exit status 1) if a game does not end normally, or if a
+ * move takes longer than the timeout. The heap
+ * retained by the players of a game is also measured, with the service and
+ * with players initialized on their own.
+ * </p>
+ * <p>
+ * Usage: ServiceCheck [M N X games timeout] (e.g. 7 8 5 16 1)
+ * </p>
+ */
+public class ServiceCheck {
+
+    private static final int OPENING_MOVES = 4;
+
+    private ServiceCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int M = args.length >= 5 ? Integer.parseInt(args[0]) : 7;
+        int N = args.length >= 5 ? Integer.parseInt(args[1]) : 8;
+        int X = args.length >= 5 ? Integer.parseInt(args[2]) : 5;
+        int games = args.length >= 5 ? Integer.parseInt(args[3]) : 16;
+        int timeout = args.length >= 5 ? Integer.parseInt(args[4]) : 1;
+
+        SouthPasadenaService service = new SouthPasadenaService(SouthPasadenaService.DEFAULT_TT_ENTRIES);
+
+        System.out.println(String.format("%dx%dx%d: %.1f MB per game with the service, %.1f MB on their own",
+                                         M, N, X, megabytesPerGame(service, M, N, X, games), megabytesPerGame(null, M, N, X, games)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(games);
+        List<Future<String>> results = new ArrayList<>();
+        for (int g = 0; g < games; g++){
+            long seed = g;
+            results.add(executor.submit(() -> play(service, M, N, X, timeout, seed)));
+        }
+        executor.shutdown();
+
+        boolean failed = false;
+        for (int g = 0; g < games; g++){
+            try {
+                System.out.println("Game " + g + ": " + results.get(g).get());
+            } catch (Exception e) {
+                System.out.println("Game " + g + " failed: " + e.getCause());
+                failed = true;
+            }
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static String play(SouthPasadenaService service, int M, int N, int X, int timeout, long seed) {
+
+        Random random = new Random(seed);
+        CXBoard B = new CXBoard(M, N, X);
+        for (int i = 0; i < OPENING_MOVES; i++){
+            Integer[] columns = B.getAvailableColumns();
+            B.markColumn(columns[random.nextInt(columns.length)]);
+        }
+
+        SouthPasadena[] players = {
+            service.newPlayer(M, N, X, true, timeout),
+            service.newPlayer(M, N, X, false, timeout)
+        };
+
+        long slowest = 0;
+        while (B.gameState() == CXGameState.OPEN){
+            long start = System.currentTimeMillis();
+            int column = players[B.currentPlayer()].selectColumn(B.copy());
+            long elapsed = System.currentTimeMillis() - start;
+            if (elapsed > timeout * 1000L){
+                throw new IllegalStateException("move " + (B.numOfMarkedCells() + 1) + " took " + elapsed + " ms, timeout " + timeout + " s");
+            }
+            slowest = Math.max(slowest, elapsed);
+            B.markColumn(column);
+        }
+        return B.gameState() + " in " + B.numOfMarkedCells() + " moves, slowest move " + slowest + " ms";
+    }
+
+    // Heap retained by the two players of a game
+    private static double megabytesPerGame(SouthPasadenaService service, int M, int N, int X, int games) {
+
+        // The tables of the geometry are built before measuring, they are shared in both cases
+        Geometry.of(M, N, X);
+
+        long before = usedHeap();
+        SouthPasadena[] players = new SouthPasadena[2 * games];
+        for (int i = 0; i < players.length; i++){
+            boolean first = i % 2 == 0;
+            if (service != null){
+                players[i] = service.newPlayer(M, N, X, first, 1);
+            }
+            else{
+                players[i] = new SouthPasadena();
+                players[i].initPlayer(M, N, X, first, 1);
+            }
+        }
+        long after = usedHeap();
+
+        // Keeps the players alive until the heap is measured
+        if (players[players.length - 1] == null){
+            throw new IllegalStateException();
+        }
+        return (after - before) / (1024.0 * 1024.0) / games;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++){
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -1,19 +1,14 @@
 package connectx.SouthPasadena;
 
-import java.util.HashMap;
-import java.util.Random;
-
 import connectx.CXBoard;
 import connectx.CXCellState;
-import connectx.CXGameState;
 import connectx.CXPlayer;
+import connectx.CXStatsReporter;
 
 /**
  * Mike Garavani's Connect X software player
  */
-public class SouthPasadena implements CXPlayer {
-
-    private Random rand;
+public class SouthPasadena implements CXPlayer, CXStatsReporter {
 
     // CONSTANTS
 
@@ -26,51 +21,388 @@ public class SouthPasadena implements CXPlayer {
     // Constant used in the diagonal heuristic score evaluation
     public static final int MULTIPLIER_3 = 2;
 
+    // Score of each useful threat (an empty cell completing a line without opponent threats below it)
+    public static final int THREAT_SCORE = 8;
+
+    // Additional score of each useful threat in a row of the parity the player can claim
+    public static final int PARITY_THREAT_SCORE = 16;
+
+    // Score of a favourable zugzwang verdict of the threat analysis
+    public static final int ZUGZWANG_SCORE = 64;
+
+    /*
+     * Score of a win in 0 plies. A win in p plies from the root is scored WIN - p and a loss
+     * -(WIN - p), so quick wins and slow losses are preferred. WIN is far from Integer.MAX_VALUE,
+     * so scores can be negated safely, and far above any heuristic score.
+     */
+    public static final int WIN = 1 << 30;
+
+    // Bound on the length of a game, below which scores are wins or losses: boards have at most 2^16 cells
+    private static final int MAX_PLIES = 1 << 16;
+
+    // System property with the directory containing the opening books (default: working directory)
+    public static final String BOOK_DIR_PROPERTY = "southpasadena.book.dir";
+
+    // System property with the directory containing the learned move orderings (default: working directory)
+    public static final String ORDERING_DIR_PROPERTY = "southpasadena.ordering.dir";
+
+    // System property with the directory containing the endgame tablebases (default: working directory)
+    public static final String TABLEBASE_DIR_PROPERTY = "southpasadena.tablebase.dir";
+
+    // Number of free cells below which the exact endgame solver is used (-Dsouthpasadena.endgame.cells=...)
+    public static final int ENDGAME_CELLS = Integer.getInteger("southpasadena.endgame.cells", 18);
+
+    // Maximum number of nodes of the df-pn solver in tactically sharp positions (-Dsouthpasadena.dfpn.nodes=...)
+    public static final long DFPN_NODES = Long.getLong("southpasadena.dfpn.nodes", 2000000L);
+
+    // Number of entries of the transposition table (-Dsouthpasadena.tt.entries=...), 16 MB by default
+    public static final int TT_ENTRIES = Integer.getInteger("southpasadena.tt.entries", TranspositionTable.DEFAULT_ENTRIES);
+
+    // Number of entries of the evaluation cache (-Dsouthpasadena.evalcache.entries=...), 768 KB by default
+    public static final int EVAL_CACHE_ENTRIES = Integer.getInteger("southpasadena.evalcache.entries", EvaluationCache.DEFAULT_ENTRIES);
+
+    /*
+     * Futility pruning: at depth FUTILITY_DEPTH or less, if the static score plus FUTILITY_MARGIN per
+     * ply of depth cannot reach the window, the moves after the first one are not searched
+     * (-Dsouthpasadena.futility.margin=..., 0 disables it)
+     */
+    public static final int FUTILITY_MARGIN = Integer.getInteger("southpasadena.futility.margin", 32);
+    private static final int FUTILITY_DEPTH = 2;
+
+    // Maximum number of nodes of the threat quiescence search from each leaf (-Dsouthpasadena.quiescence.nodes=..., 0 disables it)
+    public static final int QUIESCENCE_NODES = Integer.getInteger("southpasadena.quiescence.nodes", 64);
+
+    /*
+     * Stable best move: iterative deepening stops when the best move of the root has been the same for
+     * STABLE_ITERATIONS completed iterations, and the last one scores it at least STABLE_MARGIN above the
+     * second best move (-Dsouthpasadena.stable.iterations=..., 0 disables it)
+     */
+    public static final int STABLE_ITERATIONS = Integer.getInteger("southpasadena.stable.iterations", 6);
+    public static final int STABLE_MARGIN = Integer.getInteger("southpasadena.stable.margin", 64);
+
+    /*
+     * Specialised code: on boards of at most 64 cells, the evaluation and the win check are replaced by
+     * code generated and compiled for the geometry at run time, once it is ready (-Dsouthpasadena.codegen=false
+     * disables it)
+     */
+    public static final boolean CODEGEN = Boolean.parseBoolean(System.getProperty("southpasadena.codegen", "true"));
+
+    // Statistics of every move printed to System.err (-Dsouthpasadena.stats.log=true)
+    public static final boolean LOG_STATS = Boolean.getBoolean("southpasadena.stats.log");
+
+    // The first Flight Recorder event of the JVM sets up JFR, which takes hundreds of milliseconds even
+    // without a recording, so it is done when the class is loaded rather than on the clock of the first move
+    static {
+        new MoveSelectedEvent();
+        new SearchIterationEvent();
+    }
+
+    // Enhanced transposition cutoffs: from this depth, the children are looked up in the transposition table before any search
+    private static final int ETC_DEPTH = 3;
+
+    /*
+     * Internal iterative deepening: from depth IID_DEPTH, a node without a best move in the transposition
+     * table is first searched IID_REDUCTION plies shallower to find one (even, since the heuristic
+     * score has no side to move term)
+     */
+    private static final int IID_DEPTH = 5;
+    private static final int IID_REDUCTION = 2;
+
+    // Number of entries of the df-pn solver's table
+    private static final int DFPN_TABLE_SIZE = 1 << 18;
+
     private int rowsNumber;
     private int columnsNumber;
     private int tokensToConnect;
 
-    private CXGameState myWin;
-    private CXGameState yourWin;
-
-    private CXCellState myCell;
-    private CXCellState yourCell;
+    // SouthPasadena's player index (0 if it plays first, 1 otherwise)
+    private int myPlayer;
 
     // Dealing with time
-    private long startingTime;
     private long timeConstraintMillis;
 
+    // Player and deadlines of the search in progress
+    private SearchContext context;
+
+    // Tables of the geometry, shared with the other games played on it
+    private Geometry geometry;
+
     // Transposition tables
     private long[][][] zobristTable;
-    private HashMap<Long, TranspositionEntry> transpositionTable;
+    private TranspositionTable transpositionTable;
+
+    // Transposition table shared with other players, or null if each game has its own
+    private final TranspositionTable sharedTable;
+
+    // Key xored into the hashes of the transposition table, so that a shared table separates the scores of both players
+    private long sideKey;
+
+    // Static evaluations of the leaves, kept apart from the search results
+    private EvaluationCache evaluationCache;
+
+    // Opening book (null if there is no book for the current geometry)
+    private OpeningBook openingBook;
+
+    // Learned move ordering (null if there is none for the current geometry, the static order is used then)
+    private MoveOrdering moveOrdering;
+
+    // Statistics of the last move
+    private SearchStats stats;
+
+    // Cutoffs of the search, only counted when collected by MoveOrderingGenerator (null otherwise)
+    private CutoffStats cutoffStats;
+
+    // Exact values of all the positions (null if there is no tablebase for the current geometry)
+    private Tablebase tablebase;
+
+    // Score of the column returned by the last call to selectColumn
+    private int lastScore;
+
+    // Exact solver for the endgame, and whether it has already solved a position of this game
+    private EndgameSolver endgameSolver;
+    private boolean endgameSolved;
+
+    // Proof-number solver for tactically sharp positions
+    private DfpnSolver dfpnSolver;
+
+    // Board kept equal to the CXBoard during the search, and the threat analysis run on it
+    private FastBoard searchBoard;
+    private ThreatAnalysis threatAnalysis;
+
+    // Windows the players can still complete, kept up to date by the search board
+    private LiveWindows liveWindows;
+
+    // Bitboard evaluator of the heuristic score
+    private WindowEvaluator windowEvaluator;
+
+    // Win check specialised for the geometry, once installed (null while the generic code is used)
+    private WinCheck winCheck;
+
+    // Static column order, and the buffers the columns of each ply of the search are ordered in
+    private int[] staticOrder;
+    private int[][] moveBuffers;
+
+    // Nodes the threat quiescence search has left from the current leaf
+    private int quiescenceBudget;
+
+    // Nodes searched since the player was initialized
+    private long nodes;
 
 
     /* Default empty constructor */
     public SouthPasadena() {
+        this(null);
 	}
 
+    /**
+     * A player searching with a transposition table shared with other games (see SouthPasadenaService).
+     * 
+     * @param sharedTable - The table, or null for a table of its own
+     */
+    SouthPasadena(TranspositionTable sharedTable) {
+        this.sharedTable = sharedTable;
+    }
+
     /*
      * Initialize the Player
      */    
     public void initPlayer(int M, int N, int X, boolean first, int timeout_in_secs){
 
-        rand = new Random();
+        // The Zobrist keys, the windows, the book and the tablebase are built once for each geometry
+        geometry = Geometry.of(M, N, X);
 
         rowsNumber = M;
         columnsNumber = N;
         tokensToConnect = X;
 
-        myWin   = first ? CXGameState.WINP1 : CXGameState.WINP2;
-        yourWin = first ? CXGameState.WINP2 : CXGameState.WINP1;
-
-        myCell = first ? CXCellState.P1 : CXCellState.P2;
-        yourCell = first ? CXCellState.P2 : CXCellState.P1;
+        myPlayer = first ? 0 : 1;
 
         timeConstraintMillis = timeout_in_secs * 1000;
 
-        initZobrist();
-        transpositionTable = new HashMap<>();
+        zobristTable = geometry.zobristTable();
+        sideKey = geometry.sideKey(myPlayer);
+        transpositionTable = sharedTable != null ? sharedTable : new TranspositionTable(TT_ENTRIES);
+        evaluationCache = new EvaluationCache(EVAL_CACHE_ENTRIES);
+
+        openingBook = geometry.openingBook();
+        moveOrdering = geometry.moveOrdering();
+        cutoffStats = null;
+        tablebase = geometry.tablebase();
+
+        // The solvers are only allocated when they are needed for the first time
+        endgameSolver = null;
+        endgameSolved = false;
+        dfpnSolver = null;
+        searchBoard = new FastBoard(M, N, X, zobristTable);
+        liveWindows = geometry.newLiveWindows();
+        searchBoard.trackLiveWindows(liveWindows);
+        threatAnalysis = new ThreatAnalysis(M, N);
+        windowEvaluator = geometry.newWindowEvaluator();
+        winCheck = null;
+        staticOrder = geometry.columnOrder();
+        // A ply of the search plays a token, so there are no more plies than cells
+        moveBuffers = new int[M * N + 1][N];
+        nodes = 0;
+        stats = new SearchStats(N, M * N + 1);
+
+    }
+
+    /**
+     * Picks the best column according to the tablebase: the quickest win, otherwise
+     * a draw, otherwise the slowest loss.
+     * 
+     * @return The column, or -1 if the current position is not in the tablebase
+     */
+    private int tablebaseColumn(){
+
+        int bestColumn = -1;
+        int bestValue = 0;
+        for (int c : staticOrder){
+            if (!searchBoard.canPlay(c)){
+                continue;
+            }
+
+            int value;
+            if (searchBoard.play(c)){
+                value = 1;
+            }
+            else if (searchBoard.isFull()){
+                value = 0;
+            }
+            else{
+                int index = tablebase.find(Tablebase.key(searchBoard));
+                if (index < 0){
+                    searchBoard.undo();
+                    return -1;
+                }
+                value = Tablebase.parentValue(tablebase.value(index));
+            }
+            searchBoard.undo();
+
+            if (bestColumn < 0 || Tablebase.rank(value) > Tablebase.rank(bestValue)){
+                bestColumn = c;
+                bestValue = value;
+            }
+        }
 
+        lastScore = bestValue > 0 ? WIN - bestValue : (bestValue < 0 ? -(WIN + bestValue) : 0);
+        return bestColumn;
+    }
+
+    /**
+     * Switches the boards and the evaluator to the code KernelGenerator specialised for the
+     * geometry, as soon as it is compiled.
+     */
+    private void useSpecialisedCode(){
+        if (winCheck != null || geometry.specialisedWinCheck() == null){
+            return;
+        }
+        winCheck = geometry.specialisedWinCheck();
+        searchBoard.setWinCheck(winCheck);
+        windowEvaluator.useKernel(geometry.specialisedKernel());
+        if (endgameSolver != null){
+            endgameSolver.setWinCheck(winCheck);
+        }
+        if (dfpnSolver != null){
+            dfpnSolver.setWinCheck(winCheck);
+        }
+    }
+
+    /**
+     * @param B
+     * @return A board with the position of B which keeps its hash up to date with SouthPasadena's Zobrist keys
+     */
+    FastBoard hashedBoard(CXBoard B){
+        FastBoard board = new FastBoard(rowsNumber, columnsNumber, tokensToConnect, zobristTable);
+        board.load(B);
+        return board;
+    }
+
+    /**
+     * Replaces the learned move ordering of the geometry, when it is being generated or measured.
+     *
+     * @param ordering - The move ordering, or null for the static order
+     */
+    void useMoveOrdering(MoveOrdering ordering){
+        moveOrdering = ordering;
+    }
+
+    /**
+     * Counts the cutoffs of the following searches.
+     *
+     * @param stats - Statistics to add the cutoffs to, or null to stop counting them
+     */
+    void collectCutoffs(CutoffStats stats){
+        cutoffStats = stats;
+    }
+
+    /**
+     * @return The best column found by the last search of the position set with loadPosition, or -1
+     */
+    int searchedColumn(){
+        long entry = transpositionTable.probe(searchBoard.canonicalHash() ^ sideKey);
+        return entry != TranspositionTable.MISSING ? storedColumn(entry) : -1;
+    }
+
+    /**
+     * Disables the opening book, used when the book itself is being generated.
+     */
+    void disableOpeningBook(){
+        openingBook = null;
+    }
+
+    /**
+     * @return The score of the column returned by the last call to selectColumn,
+     * from SouthPasadena's point of view
+     */
+    int lastScore(){
+        return lastScore;
+    }
+
+    /**
+     * Sets up a fixed depth search of the position, without the book, the tablebase nor the solvers,
+     * as when checking that the search itself does not allocate.
+     * 
+     * @param B
+     */
+    void loadPosition(CXBoard B){
+        context = new SearchContext(myPlayer, System.currentTimeMillis(), timeConstraintMillis);
+        useSpecialisedCode();
+        searchBoard.load(B);
+        windowEvaluator.dropDeadWindows(searchBoard);
+        transpositionTable.newSearch();
+    }
+
+    /**
+     * Searches the position set by loadPosition to the given depth.
+     * 
+     * @param depth
+     * @return The score of the position, from the point of view of the player to move
+     */
+    int search(int depth){
+        int score = alphaBetaMinimax(Integer.MIN_VALUE, Integer.MAX_VALUE, depth, 0, true);
+        return searchBoard.currentPlayer() == myPlayer ? score : -score;
+    }
+
+    /**
+     * @return The number of nodes searched since the player was initialized
+     */
+    long nodeCount(){
+        return nodes;
+    }
+
+    /**
+     * @return The statistics of the last move, updated by selectColumn
+     */
+    public SearchStats searchStats(){
+        return stats;
+    }
+
+    /*
+     * Statistics of the last move, for CXPlayerTester
+     */
+    public String lastMoveStats(){
+        return stats.source() != null ? stats.toString() : null;
     }
 
     /*
@@ -78,22 +410,148 @@ public class SouthPasadena implements CXPlayer {
      */
     public int selectColumn(CXBoard B){
 
-        startingTime = System.currentTimeMillis();
+        long startMillis = System.currentTimeMillis();
+        MoveSelectedEvent event = new MoveSelectedEvent();
+        event.begin();
+        stats.reset();
+        long startNodes = nodes;
+        int column = searchColumn(B, startMillis);
+        stats.nodes = nodes - startNodes;
+        stats.finish();
+        if (event.shouldCommit()){
+            event.column = column;
+            event.move = B.numOfMarkedCells() + 1;
+            event.source = stats.source();
+            event.depth = stats.depth();
+            event.nodes = stats.nodes;
+            event.budget = timeConstraintMillis;
+            event.commit();
+        }
+        if (LOG_STATS){
+            System.err.println("SouthPasadena, move " + (B.numOfMarkedCells() + 1) + ":" + System.lineSeparator() + stats);
+        }
+        return column;
+    }
+
+    /**
+     * Picks the column to play, from the book, the tablebase, the solvers or the search.
+     *
+     * @param B
+     * @param startMillis - Time at which selectColumn was called
+     * @return The column
+     */
+    private int searchColumn(CXBoard B, long startMillis){
+
+        context = new SearchContext(myPlayer, startMillis, timeConstraintMillis);
+        useSpecialisedCode();
+        searchBoard.load(B);
+
+        // Opening book lookup (book columns are in the canonical orientation of the position)
+        if (openingBook != null){
+            int index = openingBook.find(searchBoard.canonicalHash());
+            if (index >= 0){
+                int column = searchBoard.toCanonical(openingBook.column(index));
+                if (!B.fullColumn(column)){
+                    lastScore = openingBook.score(index);
+                    stats.source(SearchStats.BOOK);
+                    return column;
+                }
+            }
+        }
+
+        // With a tablebase there is nothing to search
+        if (tablebase != null){
+            int column = tablebaseColumn();
+            if (column >= 0){
+                stats.source(SearchStats.TABLEBASE);
+                return column;
+            }
+        }
+
+        // When no player can win anymore the game is a draw, whatever is played
+        if (liveWindows.isDead()){
+            lastScore = 0;
+            for (int column : staticOrder){
+                if (!B.fullColumn(column)){
+                    stats.source(SearchStats.DEAD_DRAW);
+                    return column;
+                }
+            }
+        }
 
         // If the board is empty, start in the center
         if (B.numOfMarkedCells() == 0){
+            lastScore = 0;
+            stats.source(SearchStats.FIRST_MOVE);
             return columnsNumber/2;
         }
 
+        // With a single legal column there is nothing to choose: it is not searched, and scored 0 unless it wins
+        Integer[] available = B.getAvailableColumns();
+        if (available.length == 1){
+            lastScore = searchBoard.isWinningColumn(available[0], context.player) ? WIN - 1 : 0;
+            stats.source(SearchStats.ONLY_MOVE);
+            return available[0];
+        }
+
+        /*
+         * Endgame: when few cells are left we try to solve the position exactly.
+         * The solver gets half of the time, so that the heuristic search can still be run if it fails.
+         * Once a position has been solved, the following ones are solved almost instantly
+         * thanks to the solver's transposition table, so the solver gets most of the time,
+         * leaving a fifth of it for the heuristic search.
+         */
+        if (endgameSolved || B.numOfFreeCells() <= ENDGAME_CELLS){
+            if (endgameSolver == null){
+                endgameSolver = new EndgameSolver(rowsNumber, columnsNumber, tokensToConnect, zobristTable, staticOrder);
+                endgameSolver.setWinCheck(winCheck);
+            }
+            long deadline = context.deadline(endgameSolved ? 0.8 : 0.5);
+            if (endgameSolver.solve(B, deadline)){
+                endgameSolved = true;
+                // The solver's scores have the same encoding, with its own WIN
+                int score = endgameSolver.score();
+                lastScore = score > 0 ? WIN - (EndgameSolver.WIN - score) : (score < 0 ? -(WIN - (EndgameSolver.WIN + score)) : 0);
+                stats.source(SearchStats.ENDGAME_SOLVER);
+                return endgameSolver.bestColumn();
+            }
+        }
+
+        // In tactically sharp positions we look for a forced win with the df-pn solver, using a quarter of the time
+        if (isTacticallySharp(searchBoard)){
+            if (dfpnSolver == null){
+                dfpnSolver = new DfpnSolver(rowsNumber, columnsNumber, tokensToConnect, zobristTable, staticOrder, DFPN_TABLE_SIZE);
+                dfpnSolver.setWinCheck(winCheck);
+            }
+            if (dfpnSolver.solve(B, DFPN_NODES, context.deadline(0.25)) == DfpnSolver.PROVEN){
+                // The distance of the win is unknown, but the game ends before the board is full
+                lastScore = WIN - B.numOfFreeCells();
+                stats.source(SearchStats.DFPN_SOLVER);
+                return dfpnSolver.bestColumn();
+            }
+        }
+
+        // Windows taken by both players do not count anymore
+        windowEvaluator.dropDeadWindows(searchBoard);
+        transpositionTable.newSearch();
+
         // Initializing Minimax execution
-        Integer[] columnsInOrder = orderColumns();
-        // We set the first available column as the best one just for initialization purposes
-        int bestColumn = B.getAvailableColumns()[0];
+        Integer[] columnsInOrder = orderColumns(columnsNumber);
+        // Best move of the last completed iteration, the first available column until one is completed
+        int bestColumn = available[0];
         int bestScore = Integer.MIN_VALUE;
+        boolean completed = false;
+
+        // Best move of the completed iterations, and for how many of them in a row it has been the best
+        int stableColumn = -1;
+        int stableIterations = 0;
 
         // DEPTH
         int depth = 1;
 
+        // In a symmetric position a column and its mirror image are equivalent, so only one of them is searched
+        boolean symmetric = searchBoard.isSymmetric();
+
         /*
          * This segment of code iterates through all possible moves that SouthPasadena can make on the game board.
          * 
@@ -113,109 +571,534 @@ public class SouthPasadena implements CXPlayer {
          * 
          * The algorithm then picks the move with the highest score.
          * 
-         *  
+         * Each iteration searches the best move of the previous one first. The move played is the best
+         * one of the last completed iteration, or of the interrupted one if it has searched that move.
+         * 
+         * Iterative deepening goes on until the time runs out, unless a completed iteration proves the
+         * result (a win, a loss, or any score once the search reaches the end of the game), or the best
+         * move has been stable long enough (see STABLE_ITERATIONS).
          */
         while (!isTimeRunningOut()){
+            SearchIterationEvent event = new SearchIterationEvent();
+            event.begin();
+            long iterationStart = System.nanoTime();
+            long iterationNodes = nodes;
+
+            // Best and second best scores of this iteration, exact since the root moves are searched with a full window
+            int iterationColumn = -1;
+            int iterationScore = Integer.MIN_VALUE;
+            int secondScore = Integer.MIN_VALUE;
+            boolean searchedBest = false;
+
             for (int i=0; i<columnsNumber; i++){
+                if (symmetric && columnsInOrder[i] > columnsNumber - 1 - columnsInOrder[i]){
+                    continue;
+                }
                 if (!B.fullColumn(columnsInOrder[i])){
 
                     int alpha = Integer.MIN_VALUE;
                     int beta = Integer.MAX_VALUE;
 
-                    B.markColumn(columnsInOrder[i]);
-                    int currentScore = alphaBetaMinimax(B, alpha, beta, depth, false);
-                    B.unmarkColumn();
+                    // The search itself runs on the search board only
+                    int currentScore;
+                    if (searchBoard.play(columnsInOrder[i])){
+                        currentScore = WIN - 1;
+                    }
+                    else{
+                        currentScore = alphaBetaMinimax(alpha, beta, depth, 1, false);
+                    }
+                    searchBoard.undo();
+
+                    // The move searched when the time ran out has no reliable score
+                    if (isTimeRunningOut()){
+                        break;
+                    }
+                    searchedBest |= columnsInOrder[i] == bestColumn;
 
-                    if (currentScore > bestScore){
-                        bestScore = currentScore;
-                        bestColumn = columnsInOrder[i];
+                    if (currentScore > iterationScore){
+                        secondScore = iterationScore;
+                        iterationScore = currentScore;
+                        iterationColumn = columnsInOrder[i];
+                    }
+                    else if (currentScore > secondScore){
+                        secondScore = currentScore;
                     }
 
                 }
             }
 
+            stats.iteration(depth, nodes - iterationNodes, System.nanoTime() - iterationStart);
+            // An iteration interrupted before any root move was scored has no score to report
+            if (iterationColumn >= 0 && event.shouldCommit()){
+                event.depth = depth;
+                event.score = iterationScore;
+                event.nodes = nodes - iterationNodes;
+                event.interrupted = isTimeRunningOut();
+                event.commit();
+            }
+
+            // An interrupted iteration only counts if it has searched the best move of the last completed one
+            if (isTimeRunningOut()){
+                if (iterationColumn >= 0 && (searchedBest || !completed)){
+                    bestColumn = iterationColumn;
+                    bestScore = iterationScore;
+                }
+                break;
+            }
+            bestColumn = iterationColumn;
+            bestScore = iterationScore;
+            completed = true;
+            moveToFront(columnsInOrder, bestColumn);
+
+            // A proven win or loss does not change with a deeper search, nor does any score searched to the end of the game
+            boolean proven = iterationScore > WIN - MAX_PLIES || iterationScore < -(WIN - MAX_PLIES)
+                             || depth + 1 >= searchBoard.freeCells();
             depth++;
 
+            stableIterations = iterationColumn == stableColumn ? stableIterations + 1 : 1;
+            stableColumn = iterationColumn;
+            boolean stable = STABLE_ITERATIONS > 0 && stableIterations >= STABLE_ITERATIONS
+                             && (long) iterationScore - secondScore >= STABLE_MARGIN;
+
+            // The move is then the one of this iteration (the quickest win, or the slowest loss)
+            if (proven || stable){
+                break;
+            }
+
         }
 
+        lastScore = bestScore;
+        stats.source(SearchStats.SEARCH);
         return bestColumn;
 
     }
 
     /**
-     * @param B
+     * Searches the position of the search board, which is not won by the last move.
+     * Nothing is allocated, so that the garbage collector does not run during a search.
+     * 
      * @param alpha
      * @param beta
      * @param depth
+     * @param ply - Distance from the root of the search
      * @param isMaximizing
      * @return The score in the current game State
      */
-    private int alphaBetaMinimax(CXBoard B, int alpha, int beta, int depth, boolean isMaximizing){
+    private int alphaBetaMinimax(int alpha, int beta, int depth, int ply, boolean isMaximizing){
+
+        nodes++;
+
+        // Draw, on a full board or as soon as no player can win anymore
+        if (searchBoard.isFull() || liveWindows.isDead()){
+            return 0;
+        }
+        if (isBeyondDeadBound(alpha, beta)){
+            return 0;
+        }
+
+        // Tablebase hits are exact, so they replace the search
+        if (tablebase != null){
+            int index = tablebase.find(Tablebase.key(searchBoard));
+            if (index >= 0){
+                int value = tablebase.value(index);
+                if (value == 0){
+                    return 0;
+                }
+                int plies = ply + Math.abs(value);
+                return (value > 0) == isMaximizing ? WIN - plies : -(WIN - plies);
+            }
+        }
+
+        if (isTimeRunningOut()){
+            return staticScore();
+        }
+        if (depth == 0){
+            // Leaves are evaluated once the forcing moves have been played out
+            quiescenceBudget = QUIESCENCE_NODES;
+            return threatQuiescence(alpha, beta, ply, isMaximizing);
+        }
 
-        long hash = computeZobristHash(B);
+        /*
+         * Mate distance pruning: SouthPasadena cannot win before its next move nor lose before
+         * the opponent's next move, so no score in the window can be reached if a quicker
+         * result has already been found elsewhere.
+         */
+        int quickestWin = WIN - (isMaximizing ? ply + 1 : ply + 2);
+        int quickestLoss = -(WIN - (isMaximizing ? ply + 2 : ply + 1));
+        alpha = Math.max(alpha, quickestLoss);
+        beta = Math.min(beta, quickestWin);
+        if (alpha >= beta){
+            return isMaximizing ? alpha : beta;
+        }
+
+        // Positions and their mirror images share the same entry
+        long hash = searchBoard.canonicalHash();
         // Check if the board state is in the transposition table
-        TranspositionEntry entry = transpositionTable.get(hash);
-        if (entry != null && entry.depth >= depth) {
-            // Use the stored evaluation
-            return entry.evaluation;
+        long entry = probeTable(hash ^ sideKey);
+        if (entry != TranspositionTable.MISSING && TranspositionTable.depth(entry) >= depth) {
+            // Use the stored evaluation, if its bound is enough for the current window
+            int stored = fromTable(TranspositionTable.evaluation(entry), ply);
+            int flag = TranspositionTable.flag(entry);
+            if (flag == TranspositionTable.EXACT
+                || (flag == TranspositionTable.LOWER_BOUND && stored >= beta)
+                || (flag == TranspositionTable.UPPER_BOUND && stored <= alpha)){
+                return stored;
+            }
+        }
+        // The best move of a previous search of the position, even a shallower one, is searched first
+        int firstColumn = entry != TranspositionTable.MISSING ? storedColumn(entry) : -1;
+        int originalAlpha = alpha;
+        int originalBeta = beta;
+
+        /*
+         * Threat cutoffs: if the player to move can win right now, or if the other player has
+         * two threats that can be played right now, the game is decided and there is no need to search.
+         */
+        int toMove = searchBoard.currentPlayer();
+        if (searchBoard.winningColumns(toMove) > 0){
+            return isMaximizing ? WIN - (ply + 1) : -(WIN - (ply + 1));
+        }
+        if (searchBoard.winningColumns(1 - toMove) > 1){
+            return isMaximizing ? -(WIN - (ply + 2)) : WIN - (ply + 2);
         }
 
-        if (depth == 0 || B.gameState() != CXGameState.OPEN || isTimeRunningOut()){
-            int eval = heuristicScore(B);
-            transpositionTable.put(hash, new TranspositionEntry(hash, eval, depth)); // Store in transposition table
-            return eval;
+        /*
+         * Enhanced transposition cutoffs: a child already searched deep enough may be enough to
+         * cut this node off, with no need to search the other children first.
+         */
+        if (depth >= ETC_DEPTH){
+            for (int column=0; column<columnsNumber; column++){
+                if (!searchBoard.canPlay(column)){
+                    continue;
+                }
+                long child = probeTable(searchBoard.canonicalHashAfter(column) ^ sideKey);
+                if (child == TranspositionTable.MISSING || TranspositionTable.depth(child) < depth - 1){
+                    continue;
+                }
+                int childValue = fromTable(TranspositionTable.evaluation(child), ply + 1);
+                int childFlag = TranspositionTable.flag(child);
+                if ((isMaximizing && childFlag != TranspositionTable.UPPER_BOUND && childValue >= beta)
+                    || (!isMaximizing && childFlag != TranspositionTable.LOWER_BOUND && childValue <= alpha)){
+                    storeSearchResult(hash, childValue, depth, ply, originalAlpha, originalBeta, column);
+                    return childValue;
+                }
+            }
+        }
+
+        // Internal iterative deepening: a shallower search of the node finds a good move to search first
+        if (firstColumn < 0 && depth >= IID_DEPTH){
+            alphaBetaMinimax(alpha, beta, depth - IID_REDUCTION, ply, isMaximizing);
+            long shallow = probeTable(hash ^ sideKey);
+            if (shallow != TranspositionTable.MISSING){
+                firstColumn = storedColumn(shallow);
+            }
+        }
+
+        /*
+         * Futility pruning: near the leaves, if even a generous gain on the static score cannot
+         * bring it inside the window, only the first move is searched, and the quiet ones
+         * are assumed to be worth no more than that bound. Not where the search reaches the
+         * end of the game, so that its scores are exact there.
+         */
+        boolean futile = false;
+        int futilityBound = 0;
+        if (FUTILITY_MARGIN > 0 && depth <= FUTILITY_DEPTH && depth < searchBoard.freeCells()){
+            int staticScore = staticScore();
+            futilityBound = isMaximizing ? staticScore + FUTILITY_MARGIN * depth : staticScore - FUTILITY_MARGIN * depth;
+            futile = isMaximizing ? futilityBound <= alpha : futilityBound >= beta;
         }
 
         if (isMaximizing){
             int value = Integer.MIN_VALUE;
-            Integer[] columnsInOrder = orderColumns();
+            int bestColumn = -1;
+            int searched = 0;
+            int[] columnsInOrder = orderColumns(firstColumn, ply);
             for (int i=0; i<columnsNumber; i++){
-                if (!B.fullColumn(columnsInOrder[i])){
-                    B.markColumn(columnsInOrder[i]);
-                    // Note that in the following call to alphaBetaMinimax the CXBoard B has been updated
-                    value = Math.max(value, alphaBetaMinimax(B, alpha, beta, depth-1, false));
-                    B.unmarkColumn();
+                if (searchBoard.canPlay(columnsInOrder[i])){
+                    if (cutoffStats != null){
+                        cutoffStats.searched(searchBoard.freeRow(columnsInOrder[i]) * columnsNumber + columnsInOrder[i]);
+                    }
+                    // No move wins here, the threat cutoffs have already returned otherwise
+                    searchBoard.play(columnsInOrder[i]);
+                    boolean quiet = searched > 0 && !isThreatening();
+                    searched++;
+                    if (quiet && futile){
+                        value = Math.max(value, futilityBound);
+                        searchBoard.undo();
+                        continue;
+                    }
+                    int score = alphaBetaMinimax(alpha, beta, depth-1, ply+1, false);
+                    if (score > value){
+                        value = score;
+                        bestColumn = columnsInOrder[i];
+                    }
+                    searchBoard.undo();
                     if (value > beta){
+                        stats.cutoffs[searched - 1]++;
+                        if (cutoffStats != null){
+                            cutoffStats.record(searchBoard.freeRow(columnsInOrder[i]) * columnsNumber + columnsInOrder[i], searched);
+                        }
                         // break β !!
                         break;
                     }
                     alpha = Math.max(alpha, value);
                 }
             }
+            storeSearchResult(hash, value, depth, ply, originalAlpha, originalBeta, bestColumn);
             return value;
         }
 
         else{
             int value = Integer.MAX_VALUE;
-            Integer[] columnsInOrder = orderColumns();
+            int bestColumn = -1;
+            int searched = 0;
+            int[] columnsInOrder = orderColumns(firstColumn, ply);
             for (int i=0; i<columnsNumber; i++){
-                if (!B.fullColumn(columnsInOrder[i])){
-                    B.markColumn(columnsInOrder[i]);
-                    // Note that in the following call to alphaBetaMinimax the CXBoard B has been updated
-                    value = Math.min(value, alphaBetaMinimax(B, alpha, beta, depth-1, true));
-                    B.unmarkColumn();
+                if (searchBoard.canPlay(columnsInOrder[i])){
+                    if (cutoffStats != null){
+                        cutoffStats.searched(searchBoard.freeRow(columnsInOrder[i]) * columnsNumber + columnsInOrder[i]);
+                    }
+                    // No move wins here, the threat cutoffs have already returned otherwise
+                    searchBoard.play(columnsInOrder[i]);
+                    boolean quiet = searched > 0 && !isThreatening();
+                    searched++;
+                    if (quiet && futile){
+                        value = Math.min(value, futilityBound);
+                        searchBoard.undo();
+                        continue;
+                    }
+                    int score = alphaBetaMinimax(alpha, beta, depth-1, ply+1, true);
+                    if (score < value){
+                        value = score;
+                        bestColumn = columnsInOrder[i];
+                    }
+                    searchBoard.undo();
                     if (value < alpha){
+                        stats.cutoffs[searched - 1]++;
+                        if (cutoffStats != null){
+                            cutoffStats.record(searchBoard.freeRow(columnsInOrder[i]) * columnsNumber + columnsInOrder[i], searched);
+                        }
                         // break α !!
                         break;
                     }
                     beta = Math.min(beta, value);
                 }
             }
+            storeSearchResult(hash, value, depth, ply, originalAlpha, originalBeta, bestColumn);
             return value;
         }
     }
 
+    /**
+     * Threat quiescence search from a leaf of the main search, played on the search board only.
+     * It follows the forcing moves, that is blocks of the opponent's immediate wins and moves
+     * threatening to win next, until the position is quiet or the node budget is spent, so that
+     * leaves are not evaluated in the middle of a forced sequence. The player to move can also
+     * stop there, and take the static score of the position.
+     * 
+     * @param alpha
+     * @param beta
+     * @param ply - Distance from the root of the search
+     * @param isMaximizing
+     * @return The score of the position
+     */
+    private int threatQuiescence(int alpha, int beta, int ply, boolean isMaximizing){
+
+        nodes++;
+
+        if (searchBoard.isFull() || liveWindows.isDead()){
+            return 0;
+        }
+        if (isBeyondDeadBound(alpha, beta)){
+            return 0;
+        }
+
+        // Same threat cutoffs as in the main search
+        int toMove = searchBoard.currentPlayer();
+        if (searchBoard.winningColumns(toMove) > 0){
+            return isMaximizing ? WIN - (ply + 1) : -(WIN - (ply + 1));
+        }
+        int threats = searchBoard.winningColumns(1 - toMove);
+        if (threats > 1){
+            return isMaximizing ? -(WIN - (ply + 2)) : WIN - (ply + 2);
+        }
+
+        if (quiescenceBudget <= 0){
+            return staticScore();
+        }
+        quiescenceBudget--;
+
+        if (threats == 1){
+            // The opponent's immediate win must be blocked, any other move loses
+            int block = 0;
+            while (!searchBoard.isWinningColumn(block, 1 - toMove)){
+                block++;
+            }
+            searchBoard.play(block);
+            int value = threatQuiescence(alpha, beta, ply + 1, !isMaximizing);
+            searchBoard.undo();
+            return value;
+        }
+
+        int value = staticScore();
+        if (isMaximizing ? value >= beta : value <= alpha){
+            return value;
+        }
+
+        for (int column : staticOrder){
+            if (!searchBoard.canPlay(column)){
+                continue;
+            }
+            searchBoard.play(column);
+            if (isThreatening()){
+                int score = threatQuiescence(alpha, beta, ply + 1, !isMaximizing);
+                if (isMaximizing){
+                    value = Math.max(value, score);
+                    alpha = Math.max(alpha, value);
+                }
+                else{
+                    value = Math.min(value, score);
+                    beta = Math.min(beta, value);
+                }
+            }
+            searchBoard.undo();
+            if (alpha >= beta){
+                break;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Stores the result of a search in the transposition table, with the kind of bound it is
+     * for the window it was searched with. Results of searches cut short by the time limit are not stored.
+     * 
+     * @param hash
+     * @param value
+     * @param depth
+     * @param ply - Distance of the node from the root
+     * @param alpha - Alpha at the start of the search
+     * @param beta - Beta at the start of the search
+     * @param bestColumn - Best column found, or -1
+     */
+    private void storeSearchResult(long hash, int value, int depth, int ply, int alpha, int beta, int bestColumn){
+
+        if (isTimeRunningOut()){
+            return;
+        }
+
+        int flag;
+        if (value <= alpha){
+            flag = TranspositionTable.UPPER_BOUND;
+        }
+        else if (value >= beta){
+            flag = TranspositionTable.LOWER_BOUND;
+        }
+        else{
+            flag = TranspositionTable.EXACT;
+        }
+        int bestMove = bestColumn >= 0 ? searchBoard.toCanonical(bestColumn) : -1;
+        if (transpositionTable.store(hash ^ sideKey, toTable(value, ply), depth, flag, bestMove)){
+            stats.ttOverwrites++;
+        }
+    }
+
+    /**
+     * Looks a position up in the transposition table, counting the probe in the statistics.
+     * 
+     * @param key
+     * @return The position's entry, or TranspositionTable.MISSING
+     */
+    private long probeTable(long key){
+        stats.ttProbes++;
+        long entry = transpositionTable.probe(key);
+        if (entry != TranspositionTable.MISSING){
+            stats.ttHits++;
+        }
+        else if (transpositionTable.isBucketFull(key)){
+            stats.ttCollisions++;
+        }
+        return entry;
+    }
+
+    /**
+     * @param entry - The search board's entry in the transposition table
+     * @return The stored best column in the orientation of the search board, or -1
+     */
+    private int storedColumn(long entry){
+        int bestMove = TranspositionTable.bestMove(entry);
+        return bestMove >= 0 ? searchBoard.toCanonical(bestMove) : -1;
+    }
+
+    /*
+     * Win and loss scores are stored in the transposition table as distances from the stored node
+     * rather than from the root, so that they are valid wherever the position is reached again.
+     */
+    private int toTable(int score, int ply){
+        if (score > WIN - MAX_PLIES){
+            return score + ply;
+        }
+        if (score < -(WIN - MAX_PLIES)){
+            return score - ply;
+        }
+        return score;
+    }
+
+    private int fromTable(int score, int ply){
+        if (score > WIN - MAX_PLIES){
+            return score - ply;
+        }
+        if (score < -(WIN - MAX_PLIES)){
+            return score + ply;
+        }
+        return score;
+    }
+
+    /**
+     * Checks whether the move just played threatens to win with the next one: such moves
+     * are never reduced nor pruned.
+     * 
+     * @return Boolean
+     */
+    private boolean isThreatening(){
+        return searchBoard.winningColumns(1 - searchBoard.currentPlayer()) > 0;
+    }
+
+    /**
+     * A position is tactically sharp if a player can win with the next move,
+     * or if a player has at least two cells that would complete a line of 'tokensToConnect' tokens.
+     * 
+     * @param B
+     * @return Boolean
+     */
+    private boolean isTacticallySharp(FastBoard B){
+
+        threatAnalysis.analyze(B);
+
+        return threatAnalysis.immediateThreats(0) > 0 || threatAnalysis.immediateThreats(1) > 0
+            || threatAnalysis.threats(0) >= 2 || threatAnalysis.threats(1) >= 2;
+    }
+
     /**
      * Checks if the time to select a column is running out, that is if more than
-     * 99 percent of it has passed.
+     * 98 percent of it has passed.
      * 
      * @return Boolean
      */
     private boolean isTimeRunningOut(){
+        return context.isTimeRunningOut();
+    }
 
-        long elapsedTimeMillis = System.currentTimeMillis() - startingTime;
-        return (elapsedTimeMillis >= 0.98 * timeConstraintMillis);
-
+    // Moves the column to the front of the order, the others keeping their order
+    private static void moveToFront(Integer[] columnsInOrder, int column){
+        int i = 0;
+        while (columnsInOrder[i] != column){
+            i++;
+        }
+        for (; i > 0; i--){
+            columnsInOrder[i] = columnsInOrder[i - 1];
+        }
+        columnsInOrder[0] = column;
     }
 
     /**
@@ -223,10 +1106,10 @@ public class SouthPasadena implements CXPlayer {
      * Columns will then be called in this order by the Minimax algorithms.
      * This is because tokens in columns near the center of the board tend to have more opportunities.
      * 
-     * @param B
+     * @param columnsNumber
      * @return Array of the order the columns will be explored in
      */
-    private Integer[] orderColumns(){
+    private static Integer[] orderColumns(int columnsNumber){
         
         Integer[] columnPriorities = new Integer[columnsNumber];
         int midPoint = columnsNumber/2;
@@ -261,17 +1144,51 @@ public class SouthPasadena implements CXPlayer {
     }
 
     /**
-     * Initializes the Zobrist Table with random values
-     */
-    private void initZobrist(){
-        zobristTable = new long[rowsNumber][columnsNumber][3];
-        for (int i=0; i<rowsNumber; i++){
-            for (int j=0; j<columnsNumber; j++){
-                for (int k=0; k<3; k++){
-                    zobristTable[i][j][k] = rand.nextLong();
-                }
-            }
+     * Orders the columns like orderColumns(columnsNumber), or by the learned move ordering of the
+     * geometry if there is one, but with the given column first, in the buffer of the given ply so
+     * that nothing is allocated.
+     * 
+     * @param firstColumn - Column to search first, or -1 for the plain order
+     * @param ply - Distance from the root of the search
+     * @return Array of the order the columns will be explored in
+     */
+    private int[] orderColumns(int firstColumn, int ply){
+
+        int[] columnPriorities = moveBuffers[ply];
+        if (moveOrdering != null){
+            moveOrdering.order(searchBoard, staticOrder, columnPriorities);
+        }
+        else{
+            System.arraycopy(staticOrder, 0, columnPriorities, 0, columnsNumber);
+        }
+        if (firstColumn < 0){
+            return columnPriorities;
+        }
+
+        // The columns before the first one are shifted by one place
+        int position = 0;
+        while (columnPriorities[position] != firstColumn){
+            position++;
         }
+        for (int i=position; i>0; i--){
+            columnPriorities[i] = columnPriorities[i-1];
+        }
+        columnPriorities[0] = firstColumn;
+        return columnPriorities;
+
+    }
+
+    /**
+     * @param columnsNumber
+     * @return The order of the columns given by orderColumns, as a primitive array
+     */
+    static int[] columnOrder(int columnsNumber){
+        Integer[] columnsInOrder = orderColumns(columnsNumber);
+        int[] columnOrder = new int[columnsNumber];
+        for (int i=0; i<columnsNumber; i++){
+            columnOrder[i] = columnsInOrder[i];
+        }
+        return columnOrder;
     }
 
 
@@ -311,248 +1228,86 @@ public class SouthPasadena implements CXPlayer {
 
 
     /**
-     * Determines the heuristic score of the game in the current position, by returning
-     * the outcome of the game (if the game is in a final state),
-     * or by calling a helper function that determines the score in a non-terminal state.
+     * Evaluates the non-terminal position of the search board, with a cache since the same
+     * leaves come back at every iteration.
      * 
-     * @param B - CXBoard object representing the current state of the game
-     * @return The heuristic score in the current state of the game
+     * @return The heuristic score of the position
      */
-    private int heuristicScore(CXBoard B){
-
-        // Terminal states evaluation
-        if (B.gameState() == myWin){
-            // SouthPasadena has won
-            return Integer.MAX_VALUE;
+    private int staticScore(){
+        long hash = searchBoard.canonicalHash();
+        int index = evaluationCache.find(hash);
+        if (index >= 0){
+            stats.evaluationCacheHits++;
+            return evaluationCache.score(index);
         }
-        else if (B.gameState() == yourWin){
-            // The opponent has won
-            return Integer.MIN_VALUE;
+        stats.evaluations++;
+        int score = nonTerminalHeuristicScore() + threatScore();
+        // A player who cannot win anymore cannot be ahead either
+        if (!liveWindows.canWin(context.player)){
+            score = Math.min(score, 0);
         }
-        else if (B.gameState() == CXGameState.DRAW){
-            // The game is a draw
-            return 0;
-        }
-
-        // Non-Terminal states evaluation
-        else{
-            return nonTerminalHeuristicScore(B);
+        if (!liveWindows.canWin(1 - context.player)){
+            score = Math.max(score, 0);
         }
+        evaluationCache.store(hash, score);
+        return score;
     }
 
     /**
-     * Function called by heuristicScore if the current state of the game is not terminal.
-     * The score in the current game position is determined by assessing the potential 
-     * row, column and diagonal winning opportunities for each player.
-     * <p>
-     * 
-     * Note:
-     * By entering this function, we know that the current state of the game is non-terminal,
-     * and therefore we can assume that there won't be any instances on the board where a player
-     * has adjacent tokens in a quantity equal to or exceeding the number required for a win
-     * ('tokensToConnect').
-     * 
-     * @param B - CXBoard object representing the current state of the game
-     * 
-     * @return The heuristic score in the current state of the game, which is non-terminal
+     * A player without live windows cannot win anymore, so the score of the position is
+     * at least 0 if the opponent has none, and at most 0 if SouthPasadena has none.
      * 
+     * @param alpha
+     * @param beta
+     * @return True if that bound is outside the window, so that 0 can be returned
      */
-    private int nonTerminalHeuristicScore(CXBoard B){
-
-        // Initializing the heuristic score
-        int score = 0;
-
-        // VERTICAL SCORE
-        for (int j=0; j<B.getAvailableColumns().length; j++){
-
-            // Variable that iterates the current column, top to bottom
-            int topDownIter = 0;
-            /*
-             * 
-             *      0   1   2   3   4   columns
-             * 0   tpdwn
-             * 1    |
-             * 2    |
-             * 3    v
-             * 4
-             * rows
-             * 
-             */
-
-            // Counts how many tokens from the same player there are at the top of the column
-            int count = 0;
-
-            // Establishes if the top token of the column is SouthPasadena's or the opponent's
-            boolean isMyColumn = true;
-
-            // Marks the first token top to bottom that is the other player's, stopping the loop
-            boolean change = false;
-            
-
-            // Going down the j-th non-full column with 'topDownIter' until a cell is not empty
-            while (topDownIter < rowsNumber && (B.cellState(topDownIter, B.getAvailableColumns()[j]) == CXCellState.FREE)){
-                topDownIter++;
-            }
-
-            // The number of empty cells in the column
-            int emptyCellsAbove = topDownIter;
-
-            while (topDownIter < rowsNumber && change == false){
-
-                // First non empty cell found
-                if (count == 0){
-                    count++;
-                    if (B.cellState(topDownIter, B.getAvailableColumns()[j]) == myCell){
-                        isMyColumn = true;
-                    }
-                    else{
-                        isMyColumn = false;
-                    }
-                }
-
-                // The cell has the same color as the cells above it
-                else if (count > 0 && isMyColumn == true && B.cellState(topDownIter, B.getAvailableColumns()[j]) == myCell){
-                    count++;
-                }
-
-                // The cell has the same color as the cells above it
-                else if (count > 0 && isMyColumn == false && B.cellState(topDownIter, B.getAvailableColumns()[j]) == yourCell){
-                    count++;
-                }
-
-                // The cell has a different color than the cell above it
-                else{
-                    change = true;
-                }
-
-                topDownIter++;
-            }
-
-            if (count > 0 && isMyColumn && (emptyCellsAbove + count >= tokensToConnect)){
-                score = score + (int)Math.pow(count, 2) * MULTIPLIER_1;
-            }
-            else if (count > 0 && !isMyColumn && (emptyCellsAbove + count >= tokensToConnect)){
-                score = score - (int)Math.pow(count, 2) * MULTIPLIER_1;
-            }
-
-        }
-
-        // HORIZONTAL SCORE
-        for (int i=0; i<rowsNumber; i++){
-            
-            // Checking if we can skip the current row
-            int nonEmptyCells = 0;
-            for (int k=0; k<columnsNumber; k++){
-                if (B.cellState(i, k) != CXCellState.FREE){
-                    nonEmptyCells++;
-                }
-            }
-            if (nonEmptyCells == 0){
-                // If the row we're considering is completely empty, we can skip it.
-                continue;
-            }
-            else if (nonEmptyCells == columnsNumber){
-                // If the row we're considering is completely filled, it won't affect the row score and we can break out of the loop.
-                // This is because we can assume that all the rows below the current one are also full. 
-                break;
-            }
-
-            for(int j=0; j<=columnsNumber-tokensToConnect; j++){
-                int myTokens = 0;
-                int yourTokens = 0;
-                for(int k=0; k<tokensToConnect; k++){
-                    if (B.cellState(i, j+k) == myCell){
-                        myTokens++;
-                    }
-                    else if (B.cellState(i, j+k) == yourCell){
-                        yourTokens++;
-                    }
-                    // Nothing happens if the cell is empty
-                }
-                if(myTokens > 0 && yourTokens == 0){
-                    score = score + (int)Math.pow(myTokens, 2) * MULTIPLIER_2;
-                }
-                else if (yourTokens > 0 && myTokens == 0){
-                    score = score - (int)Math.pow(yourTokens, 2) * MULTIPLIER_2;
-                }
-            }
-
-        }
-
-        // DIAGONAL SCORE
-        
-        // Descending diagonal
-        for (int i=0; i <= rowsNumber - tokensToConnect; i++){
-            for (int j=0; j <= (columnsNumber - tokensToConnect); j++){
-
-                int iter = tokensToConnect;
-                int myTotalCells = 0;
-                int yourTotalCells = 0;
-                int startingRow = i;
-                int startingColumn = j;
-
-                while (iter > 0){
+    private boolean isBeyondDeadBound(int alpha, int beta){
+        return (!liveWindows.canWin(1 - context.player) && beta <= 0)
+            || (!liveWindows.canWin(context.player) && alpha >= 0);
+    }
 
-                    if (B.cellState(startingRow, startingColumn) == myCell){
-                        myTotalCells++;
-                    }
-                    else if (B.cellState(startingRow, startingColumn) == yourCell){
-                        yourTotalCells++;
-                    }
-                    // Nothing happens if the cell is empty
+    /**
+     * Scores the threats of the two players in the position of the search board, rewarding
+     * useful threats, especially those in rows of the right parity, and favourable zugzwang verdicts.
+     * 
+     * @return The threat score of the current state of the game
+     */
+    private int threatScore(){
 
-                    startingRow++;
-                    startingColumn++;
-                    iter--;
-                }
+        threatAnalysis.analyze(searchBoard);
+        int player = context.player;
+        int yourPlayer = 1 - player;
 
-                if (myTotalCells > 0 && yourTotalCells == 0){
-                    score = score + ((int)Math.pow(myTotalCells, 2)) * MULTIPLIER_3;
-                }
-                else if (myTotalCells == 0 && yourTotalCells > 0){
-                    score = score - ((int)Math.pow(yourTotalCells, 2)) * MULTIPLIER_3;
-                }
+        int score = THREAT_SCORE * (threatAnalysis.goodThreats(player) - threatAnalysis.goodThreats(yourPlayer))
+            + PARITY_THREAT_SCORE * (threatAnalysis.goodParityThreats(player) - threatAnalysis.goodParityThreats(yourPlayer));
 
-            }
+        int verdict = threatAnalysis.verdict();
+        if (verdict == player){
+            score = score + ZUGZWANG_SCORE;
         }
-
-        // Ascending diagonal
-        for (int i=0; i <= rowsNumber - tokensToConnect; i++){
-            for (int j = tokensToConnect - 1; j < columnsNumber; j++){
-
-                int iter = tokensToConnect;
-                int myTotalCells = 0;
-                int yourTotalCells = 0;
-                int startingRow = i;
-                int startingColumn = j;
-
-                while (iter > 0){
-
-                    if (B.cellState(startingRow, startingColumn) == myCell){
-                        myTotalCells++;
-                    }
-                    else if (B.cellState(startingRow, startingColumn) == yourCell){
-                        yourTotalCells++;
-                    }
-                    // Nothing happens if the cell is empty
-
-                    startingRow++;
-                    startingColumn--;
-                    iter--;
-                }
-
-                if (myTotalCells > 0 && yourTotalCells == 0){
-                    score = score + ((int)Math.pow(myTotalCells, 2)) * MULTIPLIER_3;
-                }
-                else if (myTotalCells == 0 && yourTotalCells > 0){
-                    score = score - ((int)Math.pow(yourTotalCells, 2)) * MULTIPLIER_3;
-                }
-
-            }
+        else if (verdict == yourPlayer){
+            score = score - ZUGZWANG_SCORE;
         }
 
         return score;
+    }
 
+    /**
+     * Function called by staticScore, since the current state of the game is not terminal.
+     * The score in the current game position is determined by assessing the potential 
+     * row, column and diagonal winning opportunities for each player: every window of
+     * 'tokensToConnect' cells in a row or a diagonal holding tokens of a single player scores
+     * the square of their number (weighted by MULTIPLIER_2 for rows and MULTIPLIER_3 for diagonals),
+     * and so does the run of tokens on top of each column (weighted by MULTIPLIER_1),
+     * if it can still be completed.
+     * <p>
+     * The windows are counted on the bitboards of the search board by the window evaluator.
+     * 
+     * @return The heuristic score in the current state of the game, which is non-terminal
+     * 
+     */
+    private int nonTerminalHeuristicScore(){
+        return windowEvaluator.evaluate(searchBoard, context.player);
     }
 
     /*
@@ -0,0 +1,48 @@
+package connectx.SouthPasadena;
+
+/**
+ * Engine service playing any number of games at the same time in one JVM.
+ * <p>
+ * Each game gets a SouthPasadena player of its own, which keeps the state of
+ * that game and must only be used by one thread at a time. Everything that
+ * does not depend on the game is shared: the tables of each geometry (see
+ * Geometry) and a single transposition table, whose size bounds the memory of
+ * the searches whatever the number of games. Players of different geometries
+ * and both players of a game can share it, since their keys differ.
+ * </p>
+ * <pre>
+ *  SouthPasadenaService service = new SouthPasadenaService(SouthPasadenaService.DEFAULT_TT_ENTRIES);
+ *  SouthPasadena player = service.newPlayer(M, N, X, first, timeout);
+ *  int column = player.selectColumn(B);
+ * </pre>
+ */
+public class SouthPasadenaService {
+
+    // 64 MB, for all the games of the service (-Dsouthpasadena.service.tt.entries=...)
+    public static final int DEFAULT_TT_ENTRIES = Integer.getInteger("southpasadena.service.tt.entries", 1 << 22);
+
+    private final TranspositionTable transpositionTable;
+
+    /**
+     * @param ttEntries - Number of entries of the shared transposition table
+     */
+    public SouthPasadenaService(int ttEntries) {
+        transpositionTable = new TranspositionTable(ttEntries);
+    }
+
+    /**
+     * Creates and initializes the player of a new game. This method can be called from any thread.
+     *
+     * @param M
+     * @param N
+     * @param X
+     * @param first - True if the player moves first
+     * @param timeout_in_secs - Time for each move
+     * @return The player, searching with the shared transposition table
+     */
+    public SouthPasadena newPlayer(int M, int N, int X, boolean first, int timeout_in_secs) {
+        SouthPasadena player = new SouthPasadena(transpositionTable);
+        player.initPlayer(M, N, X, first, timeout_in_secs);
+        return player;
+    }
+}
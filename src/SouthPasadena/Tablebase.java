@@ -0,0 +1,221 @@
+package connectx.SouthPasadena;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only endgame tablebase for a single small (M,N,X) geometry.
+ * <p>
+ * The tablebase holds the exact value of every open position reachable from
+ * the empty board. Positions are identified by a perfect key: each column
+ * takes M+1 bits, holding its tokens (bit set for the second player) below a
+ * marker bit at the height of the column, so the key is unique and needs
+ * N*(M+1) bits at most. A position and its mirror image share the smaller of
+ * their two keys. The file is made of a header, the sorted keys and the values:
+ * <pre>
+ *  header : int MAGIC, int VERSION, int M, int N, int X, int entries
+ *  keys   : long key[entries]
+ *  values : byte value[entries]
+ * </pre>
+ * A value is 0 for a draw, d if the player to move wins in d plies and -d if
+ * it loses in d plies. The file is memory-mapped, so a probe is a binary
+ * search over the mapped keys and nothing is loaded on the heap.
+ * </p>
+ */
+public class Tablebase {
+
+    public static final int MAGIC = 0x43585442; // "CXTB"
+    public static final int VERSION = 1;
+
+    public static final int HEADER_BYTES = 6 * Integer.BYTES;
+
+    private final MappedByteBuffer buffer;
+    private final int entries;
+    private final int valuesOffset;
+
+    private Tablebase(MappedByteBuffer buffer, int entries) {
+        this.buffer = buffer;
+        this.entries = entries;
+        this.valuesOffset = HEADER_BYTES + entries * Long.BYTES;
+    }
+
+    /**
+     * Default file name of the tablebase for the given geometry.
+     *
+     * @param M
+     * @param N
+     * @param X
+     * @return The file name, e.g. SouthPasadena-4-5-3.tb
+     */
+    public static String fileName(int M, int N, int X) {
+        return "SouthPasadena-" + M + "-" + N + "-" + X + ".tb";
+    }
+
+    /**
+     * @param M
+     * @param N
+     * @return True if the positions of the geometry fit in a key
+     */
+    public static boolean fits(int M, int N) {
+        return N * (M + 1) <= 63;
+    }
+
+    /**
+     * Memory-maps the tablebase stored in the given file.
+     *
+     * @param file
+     * @param M
+     * @param N
+     * @param X
+     * @return The tablebase, or null if the file does not exist or was built for another geometry
+     * @throws IOException If the file cannot be read or is malformed
+     */
+    public static Tablebase open(Path file, int M, int N, int X) throws IOException {
+
+        if (!fits(M, N) || !Files.isRegularFile(file)){
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            if (channel.size() < HEADER_BYTES){
+                throw new IOException("Truncated tablebase: " + file);
+            }
+
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+                throw new IOException("Not a tablebase: " + file);
+            }
+            if (buffer.getInt(8) != M || buffer.getInt(12) != N || buffer.getInt(16) != X){
+                return null;
+            }
+
+            int entries = buffer.getInt(20);
+            if (channel.size() != HEADER_BYTES + (long) entries * (Long.BYTES + 1)){
+                throw new IOException("Corrupted tablebase: " + file);
+            }
+
+            return new Tablebase(buffer, entries);
+        }
+    }
+
+    /**
+     * @return The number of positions in the tablebase
+     */
+    public int size() {
+        return entries;
+    }
+
+    /**
+     * Binary search of a position in the tablebase.
+     *
+     * @param key - Canonical key of the position (see key)
+     * @return The index of the position, or -1 if the position is not in the tablebase
+     */
+    public int find(long key) {
+
+        int low = 0;
+        int high = entries - 1;
+
+        while (low <= high){
+            int mid = (low + high) >>> 1;
+            long stored = buffer.getLong(HEADER_BYTES + mid * Long.BYTES);
+
+            if (stored < key){
+                low = mid + 1;
+            }
+            else if (stored > key){
+                high = mid - 1;
+            }
+            else{
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param index - A value returned by find
+     * @return The value of the position for the player to move
+     */
+    public int value(int index) {
+        return buffer.get(valuesOffset + index);
+    }
+
+    /**
+     * Computes the canonical key of a position.
+     *
+     * @param b - A position whose geometry fits in a key
+     * @return The smaller of the keys of the position and of its mirror image
+     */
+    public static long key(FastBoard b) {
+
+        int M = b.M;
+        int N = b.N;
+        long key = 0L;
+        long mirrorKey = 0L;
+
+        for (int j = 0; j < N; j++){
+            int height = M - 1 - b.freeRow(j);
+            long column = 1L << height;
+            for (int t = 0; t < height; t++){
+                if (b.cell(M - 1 - t, j) == 1){
+                    column |= 1L << t;
+                }
+            }
+            key |= column << (j * (M + 1));
+            mirrorKey |= column << ((N - 1 - j) * (M + 1));
+        }
+
+        return Math.min(key, mirrorKey);
+    }
+
+    /**
+     * Sets a board to the position with the given key.
+     *
+     * @param key
+     * @param b - The board, whose geometry must be the one of the key
+     */
+    public static void decode(long key, FastBoard b) {
+
+        int M = b.M;
+        long mask = (1L << (M + 1)) - 1;
+
+        b.reset();
+        for (int j = 0; j < b.N; j++){
+            long column = (key >>> (j * (M + 1))) & mask;
+            int height = 63 - Long.numberOfLeadingZeros(column);
+            for (int t = 0; t < height; t++){
+                b.drop(j, (int) (column >>> t) & 1);
+            }
+        }
+    }
+
+    /**
+     * Orders values from the point of view of the player to move: quick wins
+     * first, then draws, then slow losses.
+     *
+     * @param value
+     * @return A rank, larger for better values
+     */
+    public static int rank(int value) {
+        return value > 0 ? 1000 - value : (value < 0 ? -1000 - value : 0);
+    }
+
+    /**
+     * Value of a position for the player to move, given the value of a child for its own player to move.
+     *
+     * @param childValue
+     * @return The value reached by moving into the child
+     */
+    public static int parentValue(int childValue) {
+        return childValue > 0 ? -(childValue + 1) : (childValue < 0 ? -childValue + 1 : 0);
+    }
+}
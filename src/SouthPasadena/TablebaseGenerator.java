@@ -0,0 +1,302 @@
+package connectx.SouthPasadena;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offline generator of SouthPasadena's endgame tablebases, by retrograde analysis.
+ * <p>
+ * The positions are built layer by layer, a layer being the positions with a
+ * given number of tokens: the open positions of a layer are expanded into the
+ * next one, which is sorted, deduplicated and written to disk. The values are
+ * then computed backwards, from the last layer to the empty board, each layer
+ * only needing the values of the next one. So at most two layers are in memory
+ * at the same time. The layers are finally merged into the sorted tablebase
+ * file that SouthPasadena memory-maps at initialization. Every step is split
+ * across all the available cores.
+ * </p>
+ * <p>
+ * Usage: TablebaseGenerator M N X [output file]
+ * </p>
+ */
+public class TablebaseGenerator {
+
+    // Number of tasks per thread, to balance the load
+    private static final int TASKS_PER_THREAD = 8;
+
+    private TablebaseGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 3){
+            System.err.println("Usage: TablebaseGenerator <M> <N> <X> [output file]");
+            System.exit(1);
+        }
+
+        int M = Integer.parseInt(args[0]);
+        int N = Integer.parseInt(args[1]);
+        int X = Integer.parseInt(args[2]);
+        Path output = Paths.get(args.length > 3 ? args[3] : Tablebase.fileName(M, N, X));
+
+        if (!Tablebase.fits(M, N)){
+            System.err.println("Board too large for a tablebase");
+            System.exit(1);
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Path directory = Files.createTempDirectory(output.toAbsolutePath().getParent(), "tablebase");
+
+        try {
+            // Forward pass: enumerating the open positions of each layer
+            int layers = M * N;
+            long total = 0;
+            long[] layer = { Tablebase.key(new FastBoard(M, N, X, null)) };
+            for (int k = 0; k < layers; k++){
+                writeLongs(layerFile(directory, k), layer);
+                total += layer.length;
+                System.out.println("Layer " + k + ": " + layer.length + " positions");
+                layer = expand(executor, threads, M, N, X, layer);
+            }
+            if (total > (Integer.MAX_VALUE - Tablebase.HEADER_BYTES) / (Long.BYTES + 1)){
+                throw new IOException("Too many positions for a tablebase: " + total);
+            }
+
+            // Backward pass: the values of a layer only depend on the next one
+            long[] nextKeys = new long[0];
+            byte[] nextValues = new byte[0];
+            for (int k = layers - 1; k >= 0; k--){
+                long[] keys = readLongs(layerFile(directory, k));
+                byte[] values = evaluate(executor, threads, M, N, X, keys, nextKeys, nextValues);
+                Files.write(valueFile(directory, k), values);
+                nextKeys = keys;
+                nextValues = values;
+            }
+            System.out.println("Value of the empty board: " + nextValues[0]);
+
+            merge(directory, layers, (int) total, M, N, X, output);
+            System.out.println("Tablebase of " + total + " positions written to " + output);
+        }
+        finally {
+            executor.shutdown();
+            for (int k = 0; k < M * N; k++){
+                Files.deleteIfExists(layerFile(directory, k));
+                Files.deleteIfExists(valueFile(directory, k));
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Computes the sorted, distinct open positions reached in one move from a layer.
+     */
+    private static long[] expand(ExecutorService executor, int threads, int M, int N, int X, long[] layer) throws Exception {
+
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int[] range : split(layer.length, threads)){
+            results.add(executor.submit(() -> {
+                FastBoard b = new FastBoard(M, N, X, null);
+                long[] children = new long[Math.max(16, (range[1] - range[0]) * N)];
+                int count = 0;
+                for (int i = range[0]; i < range[1]; i++){
+                    Tablebase.decode(layer[i], b);
+                    for (int c = 0; c < N; c++){
+                        if (!b.canPlay(c)){
+                            continue;
+                        }
+                        // Won and full positions are terminal, so they are not stored
+                        boolean win = b.play(c);
+                        if (!win && !b.isFull()){
+                            children[count++] = Tablebase.key(b);
+                        }
+                        b.undo();
+                    }
+                }
+                return sortedDistinct(children, count);
+            }));
+        }
+
+        int total = 0;
+        long[][] parts = new long[results.size()][];
+        for (int i = 0; i < parts.length; i++){
+            parts[i] = results.get(i).get();
+            total += parts[i].length;
+        }
+
+        long[] all = new long[total];
+        int offset = 0;
+        for (long[] part : parts){
+            System.arraycopy(part, 0, all, offset, part.length);
+            offset += part.length;
+        }
+        return sortedDistinct(all, total);
+    }
+
+    /**
+     * Computes the values of the positions of a layer, given the values of the next layer.
+     */
+    private static byte[] evaluate(ExecutorService executor, int threads, int M, int N, int X,
+                                   long[] keys, long[] nextKeys, byte[] nextValues) throws Exception {
+
+        byte[] values = new byte[keys.length];
+
+        List<Future<?>> results = new ArrayList<>();
+        for (int[] range : split(keys.length, threads)){
+            results.add(executor.submit(() -> {
+                FastBoard b = new FastBoard(M, N, X, null);
+                for (int i = range[0]; i < range[1]; i++){
+                    Tablebase.decode(keys[i], b);
+
+                    int best = Integer.MIN_VALUE;
+                    for (int c = 0; c < N && best != 1; c++){
+                        if (!b.canPlay(c)){
+                            continue;
+                        }
+                        int value;
+                        if (b.play(c)){
+                            value = 1;
+                        }
+                        else if (b.isFull()){
+                            value = 0;
+                        }
+                        else{
+                            int index = Arrays.binarySearch(nextKeys, Tablebase.key(b));
+                            value = Tablebase.parentValue(nextValues[index]);
+                        }
+                        b.undo();
+
+                        if (best == Integer.MIN_VALUE || Tablebase.rank(value) > Tablebase.rank(best)){
+                            best = value;
+                        }
+                    }
+                    values[i] = (byte) best;
+                }
+                return null;
+            }));
+        }
+
+        for (Future<?> result : results){
+            result.get();
+        }
+        return values;
+    }
+
+    /**
+     * Merges the sorted layers into the tablebase file, streaming them from disk:
+     * a first pass writes the keys and a second one the values.
+     */
+    private static void merge(Path directory, int layers, int total, int M, int N, int X, Path output) throws IOException {
+
+        LongBuffer[] keys = new LongBuffer[layers];
+        ByteBuffer[] values = new ByteBuffer[layers];
+        for (int k = 0; k < layers; k++){
+            keys[k] = map(layerFile(directory, k)).asLongBuffer();
+            values[k] = map(valueFile(directory, k));
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output)))) {
+            out.writeInt(Tablebase.MAGIC);
+            out.writeInt(Tablebase.VERSION);
+            out.writeInt(M);
+            out.writeInt(N);
+            out.writeInt(X);
+            out.writeInt(total);
+
+            for (int pass = 0; pass < 2; pass++){
+
+                // Cursors over the layers, ordered by their current key: {key, layer, position}
+                PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+                for (int k = 0; k < layers; k++){
+                    if (keys[k].limit() > 0){
+                        queue.add(new long[] { keys[k].get(0), k, 0 });
+                    }
+                }
+
+                while (!queue.isEmpty()){
+                    long[] cursor = queue.poll();
+                    int k = (int) cursor[1];
+                    int position = (int) cursor[2];
+
+                    if (pass == 0){
+                        out.writeLong(cursor[0]);
+                    }
+                    else{
+                        out.writeByte(values[k].get(position));
+                    }
+
+                    if (position + 1 < keys[k].limit()){
+                        cursor[0] = keys[k].get(position + 1);
+                        cursor[2] = position + 1;
+                        queue.add(cursor);
+                    }
+                }
+            }
+        }
+    }
+
+    // Splits [0, length) into ranges {from, to} for the worker threads
+    private static List<int[]> split(int length, int threads) {
+        List<int[]> ranges = new ArrayList<>();
+        int tasks = threads * TASKS_PER_THREAD;
+        int size = Math.max(1, (length + tasks - 1) / tasks);
+        for (int from = 0; from < length; from += size){
+            ranges.add(new int[] { from, Math.min(length, from + size) });
+        }
+        return ranges;
+    }
+
+    private static long[] sortedDistinct(long[] keys, int count) {
+        Arrays.sort(keys, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++){
+            if (distinct == 0 || keys[i] != keys[distinct - 1]){
+                keys[distinct++] = keys[i];
+            }
+        }
+        return Arrays.copyOf(keys, distinct);
+    }
+
+    private static Path layerFile(Path directory, int k) {
+        return directory.resolve("layer-" + k + ".keys");
+    }
+
+    private static Path valueFile(Path directory, int k) {
+        return directory.resolve("layer-" + k + ".values");
+    }
+
+    private static void writeLongs(Path file, long[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(data.length * Long.BYTES);
+        buffer.asLongBuffer().put(data);
+        Files.write(file, buffer.array());
+    }
+
+    private static long[] readLongs(Path file) throws IOException {
+        LongBuffer buffer = map(file).asLongBuffer();
+        long[] data = new long[buffer.limit()];
+        buffer.get(data);
+        return data;
+    }
+
+    // The mapping stays valid after the channel is closed
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
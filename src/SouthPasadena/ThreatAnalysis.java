@@ -0,0 +1,167 @@
+package connectx.SouthPasadena;
+
+/**
+ * Threat analysis of a position, in the style of Allis' Connect Four rules.
+ * <p>
+ * A threat of a player is an empty cell which would complete a line of X
+ * tokens for that player. Because of gravity, the value of a threat depends on
+ * the row it is in: counting rows from the bottom starting at 1, in the
+ * zugzwang phase the first player can claim the odd rows and the second
+ * player the even ones. A threat is only useful if the opponent has no threat
+ * below it in the same column, since the lower threat is decided first.
+ * Two threats of the same player on top of each other win as soon as the
+ * lower one becomes playable.
+ * </p>
+ * <p>
+ * Parity rules are only applied when the number of rows is even, which is
+ * when the second player can follow up in every column and claim all the even
+ * rows. Players are 0 (first) and 1 (second), as in FastBoard.
+ * </p>
+ */
+public class ThreatAnalysis {
+
+    public static final int NONE = -1;
+
+    private final int M;
+    private final int N;
+
+    // Per player counters
+    private final int[] immediateThreats = new int[2];  // Threats which can be played right now
+    private final int[] threats = new int[2];           // All the threats
+    private final int[] goodOddThreats = new int[2];    // Threats in odd rows without opponent threats below
+    private final int[] goodEvenThreats = new int[2];   // Threats in even rows without opponent threats below
+    private final boolean[] stackedThreats = new boolean[2];
+
+    // Lowest threat of each player in the column being analysed (row index, -1 if none)
+    private final int[] lowestThreat = new int[2];
+
+    // Whether the cell below the current one is a threat of each player
+    private final boolean[] threatBelow = new boolean[2];
+
+    /**
+     * @param M
+     * @param N
+     */
+    public ThreatAnalysis(int M, int N) {
+        this.M = M;
+        this.N = N;
+    }
+
+    /**
+     * Collects the threats of both players in the given position.
+     *
+     * @param B
+     */
+    public void analyze(FastBoard B) {
+
+        for (int p = 0; p < 2; p++){
+            immediateThreats[p] = 0;
+            threats[p] = 0;
+            goodOddThreats[p] = 0;
+            goodEvenThreats[p] = 0;
+            stackedThreats[p] = false;
+        }
+
+        for (int j = 0; j < N; j++){
+            lowestThreat[0] = -1;
+            lowestThreat[1] = -1;
+            threatBelow[0] = false;
+            threatBelow[1] = false;
+
+            // Going up the empty cells of the column
+            for (int i = B.freeRow(j); i >= 0; i--){
+                for (int p = 0; p < 2; p++){
+
+                    boolean threat = B.isWinningCell(i, j, p);
+                    if (threat){
+                        threats[p]++;
+                        if (i == B.freeRow(j)){
+                            immediateThreats[p]++;
+                        }
+                        if (lowestThreat[p] < 0){
+                            lowestThreat[p] = i;
+                        }
+
+                        // Only threats without opponent threats below them are useful (rows grow downwards)
+                        int opponentThreat = lowestThreat[1 - p];
+                        if (opponentThreat < 0 || opponentThreat == i){
+                            if (((M - i) & 1) == 1){
+                                goodOddThreats[p]++;
+                            }
+                            else{
+                                goodEvenThreats[p]++;
+                            }
+                            if (threatBelow[p]){
+                                stackedThreats[p] = true;
+                            }
+                        }
+                    }
+                    threatBelow[p] = threat;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param player
+     * @return The number of threats of the player which can be played right now
+     */
+    public int immediateThreats(int player) {
+        return immediateThreats[player];
+    }
+
+    /**
+     * @param player
+     * @return The number of threats of the player
+     */
+    public int threats(int player) {
+        return threats[player];
+    }
+
+    /**
+     * @param player
+     * @return The number of useful threats of the player in rows of the parity it can claim
+     */
+    public int goodParityThreats(int player) {
+        if ((M & 1) == 1){
+            return 0;
+        }
+        return player == 0 ? goodOddThreats[0] : goodEvenThreats[1];
+    }
+
+    /**
+     * @param player
+     * @return The number of useful threats of the player
+     */
+    public int goodThreats(int player) {
+        return goodOddThreats[player] + goodEvenThreats[player];
+    }
+
+    /**
+     * Zugzwang verdict of the position, assuming no immediate tactics decide the game first.
+     * <ul>
+     * <li>A player with two useful threats on top of each other wins, if the opponent has no such pair.</li>
+     * <li>The first player wins with a useful odd threat if the second player has no useful even threat.</li>
+     * <li>The second player wins with a useful even threat if the first player has no useful odd threat.</li>
+     * </ul>
+     *
+     * @return The favoured player, or NONE
+     */
+    public int verdict() {
+
+        if (stackedThreats[0] != stackedThreats[1]){
+            return stackedThreats[0] ? 0 : 1;
+        }
+
+        if ((M & 1) == 0){
+            if (goodOddThreats[0] > 0 && goodEvenThreats[1] == 0){
+                return 0;
+            }
+            if (goodEvenThreats[1] > 0 && goodOddThreats[0] == 0){
+                return 1;
+            }
+        }
+
+        return NONE;
+    }
+}
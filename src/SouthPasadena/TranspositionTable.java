@@ -0,0 +1,165 @@
+package connectx.SouthPasadena;
+
+/**
+ * Transposition table of SouthPasadena's search, in primitive arrays.
+ * <p>
+ * Each entry is a key and a long packing the evaluation (32 bits), the depth
+ * (12 bits), the search it was stored in (4 bits), the kind of bound (2 bits)
+ * and the best move plus one (14 bits), so storing and probing never
+ * allocate. Entries are stored in buckets of two slots: the first one keeps
+ * the deepest entry of the current search, the second one the most recent
+ * entry.
+ * </p>
+ * <p>
+ * A table can be shared by searches running on several threads, with no lock:
+ * a slot holds the entry and the key xored with the entry, so a slot written
+ * by two threads at the same time, or read while it is written, does not match
+ * its key anymore and reads as missing. A probe returns the whole entry, which
+ * is then decoded with the static methods. With a shared table, the entries
+ * of the other searches running at the same time count as old ones.
+ * </p>
+ */
+public class TranspositionTable {
+
+    // Kinds of stored evaluations
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;  // The search failed high, the evaluation is at least this
+    public static final int UPPER_BOUND = 2;  // The search failed low, the evaluation is at most this
+
+    // Probe result of a position which is not stored: stored entries have a depth of at least 1, so they are never 0
+    public static final long MISSING = 0L;
+
+    // 16 MB
+    public static final int DEFAULT_ENTRIES = 1 << 20;
+
+    private static final int MAX_DEPTH = (1 << 12) - 1;
+    private static final int GENERATIONS = 1 << 4;
+    private static final int MAX_MOVE = (1 << 14) - 2;
+
+    private final int mask;
+    private final long[] keys;     // Key xor entry
+    private final long[] entries;
+
+    // Search in progress, modulo GENERATIONS
+    private volatile int generation;
+
+    /**
+     * @param entries - Number of entries, rounded down to a power of 2 (at least 2)
+     */
+    public TranspositionTable(int entries) {
+        int size = Integer.highestOneBit(Math.max(2, entries));
+        this.mask = size - 1;
+        this.keys = new long[size];
+        this.entries = new long[size];
+    }
+
+    /**
+     * Starts a new search: the entries of the previous ones can be replaced by shallower ones.
+     */
+    public void newSearch() {
+        generation = (generation + 1) % GENERATIONS;
+    }
+
+    /**
+     * @param key - Hash of the position
+     * @return The position's entry, or MISSING if the position is not stored
+     */
+    public long probe(long key) {
+        int slot = bucket(key);
+        long entry = entries[slot];
+        if ((keys[slot] ^ entry) == key){
+            return entry;
+        }
+        entry = entries[slot + 1];
+        return (keys[slot + 1] ^ entry) == key ? entry : MISSING;
+    }
+
+    /**
+     * @param key - Hash of a position which probe did not find
+     * @return True if both slots of the position's bucket hold other positions
+     */
+    public boolean isBucketFull(long key) {
+        int slot = bucket(key);
+        return entries[slot] != MISSING && entries[slot + 1] != MISSING;
+    }
+
+    /**
+     * @param entry - An entry returned by probe
+     * @return The stored evaluation
+     */
+    public static int evaluation(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    /**
+     * @param entry - An entry returned by probe
+     * @return The depth of the search the evaluation comes from, 0 if the entry is MISSING
+     */
+    public static int depth(long entry) {
+        return (int) (entry >>> 20) & MAX_DEPTH;
+    }
+
+    /**
+     * @param entry - An entry returned by probe
+     * @return EXACT, LOWER_BOUND or UPPER_BOUND
+     */
+    public static int flag(long entry) {
+        return (int) (entry >>> 14) & 3;
+    }
+
+    /**
+     * @param entry - An entry returned by probe
+     * @return The stored best move, or -1
+     */
+    public static int bestMove(long entry) {
+        return (int) (entry & 0x3FFF) - 1;
+    }
+
+    /**
+     * @param key - Hash of the position
+     * @param evaluation
+     * @param depth - Depth of the search, at least 1, stored as at most 4095
+     * @param flag - EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param bestMove - Best move, or -1
+     * @return True if the entry of another position has been dropped to store this one
+     */
+    public boolean store(long key, int evaluation, int depth, int flag, int bestMove) {
+        int generation = this.generation;
+        long entry = ((long) evaluation << 32)
+                   | ((long) Math.min(depth, MAX_DEPTH) << 20)
+                   | ((long) generation << 16)
+                   | ((long) flag << 14)
+                   | (Math.min(bestMove, MAX_MOVE) + 1);
+
+        int slot = bucket(key);
+        long first = entries[slot];
+        long firstKey = keys[slot] ^ first;
+        long second = entries[slot + 1];
+        boolean dropped = second != MISSING && (keys[slot + 1] ^ second) != key;
+        if (firstKey == key || depth >= depth(first) || generation(first) != generation){
+            if (firstKey != key){
+                // The deepest entry so far is kept as the most recent one
+                keys[slot + 1] = keys[slot];
+                entries[slot + 1] = first;
+            }
+            else{
+                dropped = false;
+            }
+            keys[slot] = key ^ entry;
+            entries[slot] = entry;
+        }
+        else{
+            keys[slot + 1] = key ^ entry;
+            entries[slot + 1] = entry;
+        }
+        return dropped;
+    }
+
+    private static int generation(long entry) {
+        return (int) (entry >>> 16) & (GENERATIONS - 1);
+    }
+
+    private int bucket(long key) {
+        return (int) (key ^ (key >>> 32)) & mask & ~1;
+    }
+}
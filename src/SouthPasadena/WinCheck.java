@@ -0,0 +1,18 @@
+package connectx.SouthPasadena;
+
+/**
+ * Win check of FastBoard on a single bitboard word.
+ * <p>
+ * Implementations are generated for a given geometry by KernelGenerator, so
+ * they only exist for boards of at most 64 cells.
+ * </p>
+ */
+public interface WinCheck {
+
+    /**
+     * @param tokens - Bitboard of the player's tokens (cell (row, col) at bit row*N+col)
+     * @param bit - A cell, which is not read, so it can be free
+     * @return True if a token of the player in the cell would complete a line of X tokens
+     */
+    boolean isWinningCell(long tokens, int bit);
+}
@@ -0,0 +1,365 @@
+package connectx.SouthPasadena;
+
+/**
+ * Bitboard evaluation of SouthPasadena's heuristic.
+ * <p>
+ * The score is the sum of the scores of every window of X consecutive cells in
+ * a row or a diagonal: a window holding tokens of a single player is worth the
+ * square of its number of tokens, times the weight of its direction, in favour
+ * of that player. A column scores the run of tokens on its top in the same
+ * way, if the run can still grow to X tokens.
+ * </p>
+ * <p>
+ * The cells of each row and diagonal window are precomputed as masks over the
+ * words of FastBoard's bitboards, so a window is counted with Long.bitCount.
+ * A window holding tokens of both players scores nothing for the rest of the
+ * game, so such windows are dropped from the evaluation when the search starts
+ * from a new position.
+ * </p>
+ * <p>
+ * On boards with many windows the row and diagonal windows are scored by the
+ * vectorised WindowKernel, if the jdk.incubator.vector module is available
+ * (see VECTOR_WINDOWS). On small boards they can be scored by the kernel
+ * KernelGenerator specialises for the geometry (see useKernel).
+ * </p>
+ */
+public class WindowEvaluator {
+
+    // Number of windows from which the vectorised kernel is used, if available (-Dsouthpasadena.vector.windows=...)
+    public static final int VECTOR_WINDOWS = Integer.getInteger("southpasadena.vector.windows", 256);
+
+    private static final String VECTOR_KERNEL = "connectx.SouthPasadena.vector.VectorWindowKernel";
+
+    private final int M;
+    private final int N;
+    private final int X;
+
+    // Window w covers the words pairWords[k] with masks pairMasks[k], for windowStarts[w] <= k < windowStarts[w+1]
+    private final int[] windowStarts;
+    private final int[] pairWords;
+    private final long[] pairMasks;
+
+    // Score of each window by number of tokens of a single player
+    private final int[][] windowScores;
+
+    // Windows still alive, in the first activeCount positions
+    private final int[] active;
+    private int activeCount;
+
+    // Tokens of the position the dead windows were last dropped for
+    private final long[][] dropped;
+
+    // Score of a column's top run by its number of tokens
+    private final int[] columnScores;
+
+    // Kernel scoring the live windows, or null to score them here
+    private WindowKernel kernel;
+
+    /**
+     * @param M
+     * @param N
+     * @param X
+     * @param columnWeight - Weight of the vertical runs
+     * @param rowWeight - Weight of the row windows
+     * @param diagonalWeight - Weight of the diagonal windows
+     */
+    public WindowEvaluator(int M, int N, int X, int columnWeight, int rowWeight, int diagonalWeight) {
+        this(M, N, X, columnWeight, rowWeight, diagonalWeight, windowCount(M, N, X) >= VECTOR_WINDOWS ? loadKernel() : null);
+    }
+
+    /**
+     * @param M
+     * @param N
+     * @param X
+     * @param columnWeight - Weight of the vertical runs
+     * @param rowWeight - Weight of the row windows
+     * @param diagonalWeight - Weight of the diagonal windows
+     * @param kernel - Kernel scoring the row and diagonal windows, or null to score them with scalar code
+     */
+    public WindowEvaluator(int M, int N, int X, int columnWeight, int rowWeight, int diagonalWeight, WindowKernel kernel) {
+        this.M = M;
+        this.N = N;
+        this.X = X;
+
+        this.kernel = kernel;
+        int windows = windowCount(M, N, X);
+
+        windowStarts = new int[windows + 1];
+        pairWords = new int[windows * X];
+        pairMasks = new long[windows * X];
+        windowScores = new int[windows][];
+        active = new int[windows];
+        dropped = new long[2][(M * N + 63) / 64];
+
+        int[] rowScores = squares(X, rowWeight);
+        int[] diagonalScores = squares(X, diagonalWeight);
+        columnScores = squares(X, columnWeight);
+
+        int w = 0;
+        int pairs = 0;
+        // Rows
+        for (int i = 0; i < M; i++){
+            for (int j = 0; j + X <= N; j++){
+                pairs = addWindow(w++, pairs, i, j, 0, 1);
+                windowScores[w - 1] = rowScores;
+            }
+        }
+        // Descending diagonals
+        for (int i = 0; i + X <= M; i++){
+            for (int j = 0; j + X <= N; j++){
+                pairs = addWindow(w++, pairs, i, j, 1, 1);
+                windowScores[w - 1] = diagonalScores;
+            }
+        }
+        // Ascending diagonals
+        for (int i = 0; i + X <= M; i++){
+            for (int j = X - 1; j < N; j++){
+                pairs = addWindow(w++, pairs, i, j, 1, -1);
+                windowScores[w - 1] = diagonalScores;
+            }
+        }
+
+        resetWindows();
+    }
+
+    /**
+     * An evaluator of the same geometry and weights, with all its windows alive, sharing the
+     * masks of the given one, which are never modified. Like the first constructor, it scores
+     * the windows with the vectorised kernel on boards with enough windows.
+     *
+     * @param other
+     */
+    public WindowEvaluator(WindowEvaluator other) {
+        this(other, windowCount(other.M, other.N, other.X) >= VECTOR_WINDOWS ? loadKernel() : null);
+    }
+
+    private WindowEvaluator(WindowEvaluator other, WindowKernel kernel) {
+        this.M = other.M;
+        this.N = other.N;
+        this.X = other.X;
+
+        this.kernel = kernel;
+        windowStarts = other.windowStarts;
+        pairWords = other.pairWords;
+        pairMasks = other.pairMasks;
+        windowScores = other.windowScores;
+        columnScores = other.columnScores;
+        active = new int[other.active.length];
+        dropped = new long[2][other.dropped[0].length];
+
+        resetWindows();
+    }
+
+    /**
+     * @param M
+     * @param N
+     * @param X
+     * @return The number of row and diagonal windows of the board
+     */
+    public static int windowCount(int M, int N, int X) {
+        int rows = N >= X ? M * (N - X + 1) : 0;
+        int diagonals = (M >= X && N >= X) ? 2 * (M - X + 1) * (N - X + 1) : 0;
+        return rows + diagonals;
+    }
+
+    /**
+     * @return The vectorised kernel, or null if it (or the jdk.incubator.vector module) is not available
+     */
+    public static WindowKernel loadKernel() {
+        try {
+            return (WindowKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return True if the windows are scored by a kernel, vectorised or specialised
+     */
+    public boolean usesKernel() {
+        return kernel != null;
+    }
+
+    /**
+     * Scores the row and diagonal windows with the given kernel from now on.
+     *
+     * @param windowKernel - A kernel, or null to score the windows with scalar code
+     */
+    public void useKernel(WindowKernel windowKernel) {
+        kernel = windowKernel;
+        updateKernel();
+    }
+
+    private void resetWindows() {
+        for (int k = 0; k < active.length; k++){
+            active[k] = k;
+        }
+        activeCount = active.length;
+        for (int w = 0; w < dropped[0].length; w++){
+            dropped[0][w] = 0L;
+            dropped[1][w] = 0L;
+        }
+        updateKernel();
+    }
+
+    // Passes the live windows to the kernel, one plane per word a window can span
+    private void updateKernel() {
+        if (kernel == null){
+            return;
+        }
+
+        int planes = 1;
+        for (int k = 0; k < activeCount; k++){
+            int w = active[k];
+            planes = Math.max(planes, windowStarts[w + 1] - windowStarts[w]);
+        }
+
+        int[][] words = new int[planes][activeCount];
+        long[][] masks = new long[planes][activeCount];
+        int[] weights = new int[activeCount];
+        for (int k = 0; k < activeCount; k++){
+            int w = active[k];
+            for (int p = windowStarts[w]; p < windowStarts[w + 1]; p++){
+                words[p - windowStarts[w]][k] = pairWords[p];
+                masks[p - windowStarts[w]][k] = pairMasks[p];
+            }
+            weights[k] = windowScores[w][1];
+        }
+        kernel.setWindows(activeCount, words, masks, weights);
+    }
+
+    // Scores of 0..X tokens
+    private static int[] squares(int X, int weight) {
+        int[] scores = new int[X + 1];
+        for (int count = 0; count <= X; count++){
+            scores[count] = count * count * weight;
+        }
+        return scores;
+    }
+
+    // Stores the masks of the window starting at (row, col) in direction (dRow, dCol)
+    private int addWindow(int w, int pairs, int row, int col, int dRow, int dCol) {
+        windowStarts[w] = pairs;
+        for (int k = 0; k < X; k++){
+            int bit = (row + k * dRow) * N + col + k * dCol;
+            int word = bit >>> 6;
+            if (pairs == windowStarts[w] || pairWords[pairs - 1] != word){
+                pairWords[pairs] = word;
+                pairMasks[pairs] = 0L;
+                pairs++;
+            }
+            pairMasks[pairs - 1] |= 1L << bit;
+        }
+        windowStarts[w + 1] = pairs;
+        return pairs;
+    }
+
+    /**
+     * Drops the windows holding tokens of both players. The following evaluations
+     * must be of positions reached from this one. If the position is not reached
+     * from the one of the previous call (e.g. in a new game), all the windows are
+     * considered again.
+     *
+     * @param b
+     */
+    public void dropDeadWindows(FastBoard b) {
+        long[] first = b.bitboard(0);
+        long[] second = b.bitboard(1);
+
+        for (int w = 0; w < first.length; w++){
+            if ((dropped[0][w] & ~first[w]) != 0 || (dropped[1][w] & ~second[w]) != 0){
+                resetWindows();
+                break;
+            }
+        }
+        System.arraycopy(first, 0, dropped[0], 0, first.length);
+        System.arraycopy(second, 0, dropped[1], 0, second.length);
+
+        int alive = 0;
+        for (int k = 0; k < activeCount; k++){
+            int w = active[k];
+            if (count(w, first) == 0 || count(w, second) == 0){
+                active[alive++] = w;
+            }
+        }
+        if (alive < activeCount){
+            activeCount = alive;
+            updateKernel();
+        }
+    }
+
+    /**
+     * @return The number of windows still evaluated
+     */
+    public int liveWindows() {
+        return activeCount;
+    }
+
+    /**
+     * Evaluates a non-terminal position.
+     *
+     * @param b
+     * @param player - The player whose point of view is taken
+     * @return The heuristic score of the position
+     */
+    public int evaluate(FastBoard b, int player) {
+        long[] mine = b.bitboard(player);
+        long[] yours = b.bitboard(1 - player);
+
+        int score = columnScore(b, player);
+        if (kernel != null){
+            return score + kernel.score(mine, yours);
+        }
+
+        for (int k = 0; k < activeCount; k++){
+            int w = active[k];
+            int myTokens = 0;
+            int yourTokens = 0;
+            for (int p = windowStarts[w]; p < windowStarts[w + 1]; p++){
+                long mask = pairMasks[p];
+                myTokens += Long.bitCount(mine[pairWords[p]] & mask);
+                yourTokens += Long.bitCount(yours[pairWords[p]] & mask);
+            }
+            if (yourTokens == 0){
+                score += windowScores[w][myTokens];
+            }
+            else if (myTokens == 0){
+                score -= windowScores[w][yourTokens];
+            }
+        }
+
+        return score;
+    }
+
+    // Scores the run of tokens on top of each non-full column, if it can still reach X tokens
+    private int columnScore(FastBoard b, int player) {
+        int score = 0;
+        for (int j = 0; j < N; j++){
+            int top = b.freeRow(j) + 1;
+            if (top == 0 || top == M){
+                // Full or empty column
+                continue;
+            }
+
+            int owner = b.cell(top, j);
+            int count = 1;
+            while (top + count < M && b.cell(top + count, j) == owner){
+                count++;
+            }
+
+            // The cells above the run are the free ones
+            if (top + count >= X){
+                score += owner == player ? columnScores[Math.min(count, X)] : -columnScores[Math.min(count, X)];
+            }
+        }
+        return score;
+    }
+
+    private int count(int w, long[] bitboard) {
+        int tokens = 0;
+        for (int p = windowStarts[w]; p < windowStarts[w + 1]; p++){
+            tokens += Long.bitCount(bitboard[pairWords[p]] & pairMasks[p]);
+        }
+        return tokens;
+    }
+}
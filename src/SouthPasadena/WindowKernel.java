@@ -0,0 +1,35 @@
+package connectx.SouthPasadena;
+
+/**
+ * Kernel scoring many windows of WindowEvaluator at once.
+ * <p>
+ * The windows are given as planes: window w covers the bitboard word
+ * words[k][w] with the mask masks[k][w], for every plane k (unused planes
+ * of a window have a 0 mask). A window holding only tokens of one player
+ * scores the square of their number times its weight, for or against the
+ * player whose bitboard comes first.
+ * </p>
+ * <p>
+ * The vectorised implementation lives in connectx.SouthPasadena.vector and
+ * needs the jdk.incubator.vector module, so it is only loaded if available.
+ * </p>
+ */
+public interface WindowKernel {
+
+    /**
+     * Sets the windows to score.
+     *
+     * @param count - Number of windows
+     * @param words - Word of each window, by plane
+     * @param masks - Mask of each window, by plane
+     * @param weights - Weight of each window
+     */
+    void setWindows(int count, int[][] words, long[][] masks, int[] weights);
+
+    /**
+     * @param mine - Bitboard of the player whose point of view is taken
+     * @param yours - Bitboard of the other player
+     * @return The sum of the scores of the windows
+     */
+    int score(long[] mine, long[] yours);
+}
@@ -0,0 +1,159 @@
+package connectx.SouthPasadena.vector;
+
+import connectx.SouthPasadena.WindowKernel;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * WindowKernel on the Vector API, scoring as many windows per instruction as
+ * there are long lanes.
+ * <p>
+ * The windows are grouped by the first bitboard word they cover, and each
+ * group is split in chunks of one vector. All the windows of a chunk read the
+ * same consecutive words, so each word is broadcast to the lanes rather than
+ * gathered, and the lanes only differ by their masks. The tokens are then
+ * counted lane-wise: the incubating API of JDK 17 has no lane-wise bit count,
+ * so the usual SWAR reduction is used.
+ * </p>
+ * <p>
+ * Compile and run with --add-modules jdk.incubator.vector.
+ * </p>
+ */
+public class VectorWindowKernel implements WindowKernel {
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    // Chunk c reads the words chunkWords[c] .. chunkWords[c] + chunkSpans[c] - 1, with the
+    // masks of word k at masks[chunkStarts[c] + k * LANES], and has its weights at weights[c * LANES]
+    private int chunks;
+    private int[] chunkWords;
+    private int[] chunkSpans;
+    private int[] chunkStarts;
+    private long[] masks;
+    private long[] weights;
+
+    public VectorWindowKernel() {
+    }
+
+    @Override
+    public void setWindows(int count, int[][] words, long[][] masks, int[] weights) {
+
+        int planes = words.length;
+
+        // First word and number of consecutive words of each window
+        int[] first = new int[count];
+        int[] span = new int[count];
+        int maxWord = 0;
+        for (int w = 0; w < count; w++){
+            int low = Integer.MAX_VALUE;
+            int high = 0;
+            for (int k = 0; k < planes; k++){
+                if (masks[k][w] != 0L){
+                    low = Math.min(low, words[k][w]);
+                    high = Math.max(high, words[k][w]);
+                }
+            }
+            first[w] = low == Integer.MAX_VALUE ? 0 : low;
+            span[w] = high - first[w] + 1;
+            maxWord = Math.max(maxWord, high);
+        }
+
+        // Windows sorted by first word (counting sort)
+        int[] starts = new int[maxWord + 2];
+        for (int w = 0; w < count; w++){
+            starts[first[w] + 1]++;
+        }
+        int groupsWithWindows = 0;
+        for (int word = 0; word <= maxWord; word++){
+            if (starts[word + 1] > 0){
+                groupsWithWindows++;
+            }
+            starts[word + 1] += starts[word];
+        }
+        int[] order = new int[count];
+        int[] next = starts.clone();
+        for (int w = 0; w < count; w++){
+            order[next[first[w]]++] = w;
+        }
+
+        // Chunks of one vector, padded with empty windows at the end of each group
+        int maxChunks = count / LANES + groupsWithWindows;
+        chunkWords = new int[maxChunks];
+        chunkSpans = new int[maxChunks];
+        chunkStarts = new int[maxChunks];
+        this.weights = new long[maxChunks * LANES];
+
+        int total = 0;
+        chunks = 0;
+        for (int word = 0; word <= maxWord; word++){
+            for (int i = starts[word]; i < starts[word + 1]; i += LANES){
+                int chunkSpan = 1;
+                for (int lane = 0; lane < LANES && i + lane < starts[word + 1]; lane++){
+                    chunkSpan = Math.max(chunkSpan, span[order[i + lane]]);
+                }
+                chunkWords[chunks] = word;
+                chunkSpans[chunks] = chunkSpan;
+                chunkStarts[chunks] = total;
+                total += chunkSpan * LANES;
+                chunks++;
+            }
+        }
+
+        this.masks = new long[total];
+        int c = 0;
+        for (int word = 0; word <= maxWord; word++){
+            for (int i = starts[word]; i < starts[word + 1]; i += LANES, c++){
+                for (int lane = 0; lane < LANES && i + lane < starts[word + 1]; lane++){
+                    int w = order[i + lane];
+                    this.weights[c * LANES + lane] = weights[w];
+                    for (int k = 0; k < planes; k++){
+                        if (masks[k][w] != 0L){
+                            int offset = words[k][w] - word;
+                            this.masks[chunkStarts[c] + offset * LANES + lane] |= masks[k][w];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public int score(long[] mine, long[] yours) {
+
+        LongVector zero = LongVector.zero(SPECIES);
+        LongVector total = zero;
+
+        for (int c = 0; c < chunks; c++){
+            LongVector myTokens = zero;
+            LongVector yourTokens = zero;
+
+            int word = chunkWords[c];
+            int start = chunkStarts[c];
+            for (int k = 0; k < chunkSpans[c]; k++){
+                LongVector mask = LongVector.fromArray(SPECIES, masks, start + k * LANES);
+                myTokens = myTokens.add(bitCount(mask.and(mine[word + k])));
+                yourTokens = yourTokens.add(bitCount(mask.and(yours[word + k])));
+            }
+
+            LongVector weight = LongVector.fromArray(SPECIES, weights, c * LANES);
+            VectorMask<Long> onlyMine = yourTokens.eq(0L);
+            VectorMask<Long> onlyYours = myTokens.eq(0L);
+
+            total = total.add(myTokens.mul(myTokens).mul(weight), onlyMine);
+            total = total.sub(yourTokens.mul(yourTokens).mul(weight), onlyYours);
+        }
+
+        return (int) total.reduceLanes(VectorOperators.ADD);
+    }
+
+    // Lane-wise population count
+    private static LongVector bitCount(LongVector x) {
+        x = x.sub(x.lanewise(VectorOperators.LSHR, 1).and(0x5555555555555555L));
+        x = x.and(0x3333333333333333L).add(x.lanewise(VectorOperators.LSHR, 2).and(0x3333333333333333L));
+        x = x.add(x.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F0F0F0F0F0F0FL);
+        return x.mul(0x0101010101010101L).lanewise(VectorOperators.LSHR, 56);
+    }
+}